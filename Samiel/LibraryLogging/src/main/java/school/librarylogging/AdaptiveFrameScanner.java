@@ -0,0 +1,338 @@
+package school.librarylogging;
+
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decodes live frames as they arrive instead of polling the camera.
+ *
+ * Frames are handed over with {@link #offer} (by {@link ScanEngine}, from a {@link WebcamFrameSource}, which
+ * counts what the camera captured). Only the latest frame is kept, in a single slot: a frame the
+ * decode thread has not picked up yet is replaced (and counted as dropped) by the next one, so decoding
+ * never falls behind the camera and never sees the same frame twice.
+ *
+ * The decode rate adapts to what the camera sees:
+ * <ul>
+ *   <li>while a code is partly visible ({@link QrDecoder#isPartialDetection()}) every frame is decoded;</li>
+ *   <li>otherwise frames are decoded at most every {@code intervalMs};</li>
+ *   <li>once the scene has been static for {@code staticAfterMs}, only every {@code idleIntervalMs}.</li>
+ * </ul>
+ * Motion is measured on the camera thread with a coarse luminance grid, so a code entering a static scene
+ * wakes the decoder on the very next frame.
+ *
+ * After a code is read the scanner pauses until {@link #resume()} is called. In batch mode
+ * ({@link #setBatchDecoder}) every code in each frame is reported instead and the scanner keeps going.
+ */
+public class AdaptiveFrameScanner implements AutoCloseable {
+
+    /**
+     * Receives scan outcomes on the decode thread.
+     */
+    public interface ScanListener {
+        /**
+         * A code was read. The scanner is paused until {@link #resume()}.
+         */
+        void onScan(Result result);
+
+        /**
+         * Batch mode only: the distinct codes found in one frame. Scanning continues.
+         */
+        default void onScanMultiple(List<Result> results) {
+        }
+
+        /**
+         * A decoded frame held no code.
+         */
+        default void onNoCode() {
+        }
+
+        /**
+         * A code was found but could not be read.
+         */
+        default void onReadError(ReaderException ex) {
+        }
+    }
+
+    public static final long DEFAULT_INTERVAL_MS = 33;
+    public static final long DEFAULT_IDLE_INTERVAL_MS = 250;
+    public static final long DEFAULT_STATIC_AFTER_MS = 1000;
+    private static final long BOOST_MS = 500;
+
+    // Motion detection: luminance sampled on a GRID_WIDTH x GRID_HEIGHT grid
+    private static final int GRID_WIDTH = 32;
+    private static final int GRID_HEIGHT = 24;
+    private static final double MOTION_THRESHOLD = 3.0;
+
+    private final QrDecoder decoder;
+    private final ScanListener listener;
+    private final long intervalNanos;
+    private final long idleIntervalNanos;
+    private final long staticAfterNanos;
+
+    private final AtomicReference<Frame> latest = new AtomicReference<>();
+    private final Thread decodeThread;
+    private volatile boolean paused;
+    private volatile MultiQrDecoder batchDecoder;
+    private volatile boolean closed;
+
+    // Written by the camera thread only; the two grids are swapped on every frame
+    private int[] grid = new int[GRID_WIDTH * GRID_HEIGHT];
+    private int[] previousGrid = new int[GRID_WIDTH * GRID_HEIGHT];
+    private boolean hasPreviousGrid;
+    private volatile long lastMotionAt = System.nanoTime();
+    // Used by the decode thread only
+    private long boostUntil;
+    private long lastDecodeAt;
+
+    // Metrics
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final Histogram detectMicros = new Histogram("us");
+    private final Histogram allocatedBytes = new Histogram("B");
+
+    // Every scanner in the process, see Metrics
+    private static final Metrics.Counter FRAMES_DROPPED = Metrics.counter("scan.frames.dropped");
+    private static final Histogram DETECT_TIME = Metrics.histogram("scan.detect.time", "us");
+
+    private record Frame(BufferedImage image, long arrivedAt) {
+    }
+
+    public AdaptiveFrameScanner(QrDecoder decoder, ScanListener listener) {
+        this(decoder, listener,
+                Long.getLong("librarylogging.scanner.intervalMs", DEFAULT_INTERVAL_MS),
+                Long.getLong("librarylogging.scanner.idleIntervalMs", DEFAULT_IDLE_INTERVAL_MS),
+                Long.getLong("librarylogging.scanner.staticAfterMs", DEFAULT_STATIC_AFTER_MS));
+    }
+
+    /**
+     * @param decoder        Decoder, used only by this scanner's decode thread from now on
+     * @param listener       Receives scan outcomes
+     * @param intervalMs     Minimum time between decodes while the scene changes
+     * @param idleIntervalMs Minimum time between decodes while the scene is static
+     * @param staticAfterMs  Time without motion after which the scene counts as static
+     */
+    public AdaptiveFrameScanner(QrDecoder decoder, ScanListener listener,
+                                long intervalMs, long idleIntervalMs, long staticAfterMs) {
+        this.decoder = decoder;
+        this.listener = listener;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.idleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(idleIntervalMs);
+        this.staticAfterNanos = TimeUnit.MILLISECONDS.toNanos(staticAfterMs);
+        this.decodeThread = new Thread(this::run, "qr-decoder");
+        decodeThread.setDaemon(true);
+        decodeThread.start();
+    }
+
+    /**
+     * Hands a new frame to the decode thread, replacing any frame it has not picked up yet.
+     */
+    public void offer(BufferedImage image) {
+        if (image == null || paused || closed) {
+            return;
+        }
+        framesReceived.incrementAndGet();
+        long now = System.nanoTime();
+        if (hasMotion(image)) {
+            lastMotionAt = now;
+        }
+        if (latest.getAndSet(new Frame(image, now)) != null) {
+            framesDropped.incrementAndGet();
+            FRAMES_DROPPED.increment();
+        }
+        LockSupport.unpark(decodeThread);
+    }
+
+    private boolean hasMotion(BufferedImage image) {
+        int[] previous = previousGrid;
+        previousGrid = grid;
+        grid = previous;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            int py = (2 * y + 1) * height / (2 * GRID_HEIGHT);
+            for (int x = 0; x < GRID_WIDTH; x++) {
+                int rgb = image.getRGB((2 * x + 1) * width / (2 * GRID_WIDTH), py);
+                grid[y * GRID_WIDTH + x] = (((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8;
+            }
+        }
+        if (!hasPreviousGrid) {
+            hasPreviousGrid = true;
+            return true;
+        }
+        long difference = 0;
+        for (int i = 0; i < grid.length; i++) {
+            difference += Math.abs(grid[i] - previousGrid[i]);
+        }
+        return (double) difference / grid.length > MOTION_THRESHOLD;
+    }
+
+    private void run() {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            Frame frame = latest.get();
+            if (frame == null || paused) {
+                LockSupport.park(this);
+                continue;
+            }
+            long now = System.nanoTime();
+            long wait = lastDecodeAt + currentInterval(now) - now;
+            if (wait > 0) {
+                // A newer frame may replace this one while we wait
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            if (!latest.compareAndSet(frame, null)) {
+                continue;
+            }
+            lastDecodeAt = now;
+            decode(frame);
+        }
+    }
+
+    private long currentInterval(long now) {
+        if (now < boostUntil) {
+            return 0;
+        }
+        return now - lastMotionAt > staticAfterNanos ? idleIntervalNanos : intervalNanos;
+    }
+
+    private void decode(Frame frame) {
+        long allocatedBefore = AllocationMeter.currentThreadAllocatedBytes();
+        try {
+            decodeFrame(frame);
+        } finally {
+            if (allocatedBefore >= 0) {
+                allocatedBytes.record(AllocationMeter.currentThreadAllocatedBytes() - allocatedBefore);
+            }
+        }
+    }
+
+    private void decodeFrame(Frame frame) {
+        framesDecoded.incrementAndGet();
+        MultiQrDecoder multi = batchDecoder;
+        if (multi != null) {
+            decodeBatch(multi, frame);
+            return;
+        }
+        try {
+            Result result = decoder.decode(frame.image());
+            if (result == null) {
+                if (decoder.isPartialDetection()) {
+                    boostUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BOOST_MS);
+                }
+                listener.onNoCode();
+                return;
+            }
+            recordDetect(frame);
+            paused = true;
+            latest.set(null);
+            listener.onScan(result);
+        } catch (ReaderException ex) {
+            boostUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BOOST_MS);
+            listener.onReadError(ex);
+        } catch (RuntimeException ex) {
+            System.out.println("Error! Frame decode failed: " + ex.getMessage());
+        }
+    }
+
+    private void recordDetect(Frame frame) {
+        long micros = (System.nanoTime() - frame.arrivedAt()) / 1000;
+        detectMicros.record(micros);
+        DETECT_TIME.record(micros);
+    }
+
+    private void decodeBatch(MultiQrDecoder multi, Frame frame) {
+        try {
+            List<Result> results = multi.decodeMultiple(frame.image());
+            if (results.isEmpty()) {
+                listener.onNoCode();
+                return;
+            }
+            recordDetect(frame);
+            // More books may be coming into view: keep the full rate while codes are visible
+            boostUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BOOST_MS);
+            listener.onScanMultiple(results);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            System.out.println("Error! Frame decode failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Switches between single-code scanning (null) and batch scanning with the given decoder.
+     */
+    public void setBatchDecoder(MultiQrDecoder decoder) {
+        batchDecoder = decoder;
+    }
+
+    /**
+     * Starts decoding again after a scan.
+     */
+    public void resume() {
+        latest.set(null);
+        paused = false;
+        LockSupport.unpark(decodeThread);
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Stops the decode thread. Frames offered afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(decodeThread);
+        try {
+            decodeThread.join(2000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return frames replaced by a newer one before the decode thread picked them up
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded.get();
+    }
+
+    /**
+     * @return time from a frame's arrival to its decoded result, in microseconds
+     */
+    public Histogram getDetectLatency() {
+        return detectMicros;
+    }
+
+    /**
+     * @return bytes allocated by the decode thread per decoded frame; in batch mode the pool threads'
+     *         allocations are not included. Empty if the JVM cannot measure allocations.
+     */
+    public Histogram getAllocatedBytesPerFrame() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdaptiveFrameScanner[received=%d, dropped=%d, decoded=%d, detect{%s}, allocated{%s}, %s]",
+                getFramesReceived(), getFramesDropped(), getFramesDecoded(), detectMicros, allocatedBytes, decoder);
+    }
+}
@@ -0,0 +1,147 @@
+package school.librarylogging;
+
+import javax.swing.*;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link DatabaseHandler} calls off the Swing event dispatch thread.
+ *
+ * Tasks run on a virtual-thread-per-task executor when the JVM provides one (Java 21+), otherwise on a
+ * cached pool of daemon threads. Results are delivered back on the EDT with {@link #onEdt}.
+ * Cancelling a returned future interrupts the task if it is still running. Writes should use
+ * {@link #interrupt} instead, which keeps the future so the caller learns whether the write happened.
+ */
+public final class AsyncDatabase {
+
+    /**
+     * Executor that runs callbacks on the Swing event dispatch thread.
+     */
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private static final ExecutorService executor = createExecutor();
+    // Tasks not finished yet, by the future they complete
+    private static final Map<CompletableFuture<?>, Worker> running = new ConcurrentHashMap<>();
+
+    /**
+     * A database call that returns a value and may throw.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    private AsyncDatabase() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // Pre-21 JVM: fall back to platform daemon threads
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "database-worker-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Runs the task in the background.
+     *
+     * @return future completed with the task's result; cancel it to interrupt the task
+     */
+    public static <T> CompletableFuture<T> supply(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Worker worker = new Worker();
+        running.put(future, worker);
+        Future<?> submitted = executor.submit(() -> {
+            try {
+                worker.start();
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                worker.finish();
+                running.remove(future);
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                submitted.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Interrupts the task without cancelling its future. A task waiting for a connection gives up, but a
+     * JDBC call already sent usually runs to the end, so the future still completes with what really happened.
+     */
+    public static void interrupt(CompletableFuture<?> future) {
+        Worker worker = running.get(future);
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * The thread running a task, interrupted at most while the task runs on it.
+     */
+    private static final class Worker {
+        private Thread thread;
+        private boolean interrupted;
+
+        synchronized void start() {
+            thread = Thread.currentThread();
+            if (interrupted) {
+                thread.interrupt();
+            }
+        }
+
+        synchronized void finish() {
+            thread = null;
+            // Clear an interrupt the task did not consume before the thread runs something else
+            Thread.interrupted();
+        }
+
+        synchronized void interrupt() {
+            interrupted = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Delivers the outcome of the future on the EDT. Nothing is delivered if the future was cancelled.
+     *
+     * @param onSuccess Receives the result
+     * @param onFailure Receives the cause of the failure, unwrapped from {@link CompletionException}
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        future.whenCompleteAsync((result, error) -> {
+            if (error == null) {
+                onSuccess.accept(result);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof CancellationException)) {
+                onFailure.accept(cause);
+            }
+        }, EDT);
+    }
+}
@@ -0,0 +1,18 @@
+package school.librarylogging;
+
+/**
+ * One row of the book_record table.
+ *
+ * @param bookId   primary key
+ * @param bookName title of the book
+ * @param borrowed 1 if the book is currently borrowed, 0 otherwise
+ */
+public record Book(int bookId, String bookName, int borrowed) {
+
+    /**
+     * @return the book as a table row: book_id, book_name, borrowed
+     */
+    public Object[] toRow() {
+        return new Object[]{bookId, bookName, borrowed};
+    }
+}
@@ -0,0 +1,160 @@
+package school.librarylogging;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded read-through cache of book rows keyed by book_id, least recently used entries evicted first.
+ *
+ * Entries also expire after a fixed time so a borrowed flag changed by another station is not shown
+ * for long. Writers in {@link DatabaseHandler} invalidate or replace entries. A load that races with an
+ * invalidation is not cached: callers take a token with {@link #loadToken()} before reading the
+ * database and pass it to {@link #putLoaded}, which drops the row if anything was invalidated meanwhile.
+ */
+public class BookCache {
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, Entry> entries;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param capacity  Maximum number of cached books
+     * @param ttlMillis Time after which an entry is reloaded, 0 to keep entries until evicted
+     */
+    public BookCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > BookCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached book, or null on a miss
+     */
+    public Book get(int bookId) {
+        synchronized (entries) {
+            Entry entry = entries.get(bookId);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+                entries.remove(bookId);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.book;
+        }
+    }
+
+    /**
+     * @return token to pass to {@link #putLoaded} after reading from the database
+     */
+    public long loadToken() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a book read from the database unless an invalidation happened since {@code token} was taken.
+     */
+    public void putLoaded(long token, Book book) {
+        synchronized (entries) {
+            if (invalidations.get() == token) {
+                entries.put(book.bookId(), new Entry(book, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Stores a book just written by this process.
+     */
+    public void put(Book book) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.put(book.bookId(), new Entry(book, System.nanoTime()));
+        }
+    }
+
+    public void invalidate(int bookId) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.remove(bookId);
+        }
+    }
+
+    /**
+     * Drops every cached book with the given name (case-insensitive, like the database collation).
+     */
+    public void invalidateByName(String bookName) {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().book.bookName().equalsIgnoreCase(bookName)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            invalidations.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BookCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, expirations=%d]",
+                size(), capacity, getHitCount(), getMissCount(), getHitRate() * 100, getEvictionCount(), getExpirationCount());
+    }
+
+    private record Entry(Book book, long loadedAt) {
+    }
+}
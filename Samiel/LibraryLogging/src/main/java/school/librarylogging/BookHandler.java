@@ -1,5 +1,7 @@
 package school.librarylogging;
 
+import java.sql.SQLException;
+
 public class BookHandler {
     String bookName, bookID, borrowedBy, studentID;
     boolean isBorrowed;
@@ -7,7 +9,35 @@ public class BookHandler {
     public static void main(String[] args) {
     }
 
-    static Boolean borrowBook(String bookID, String studentID){
-        return false;
+    /**
+     * Borrows a book in one atomic conditional update; safe when several scan stations
+     * try to borrow the same copy at once.
+     *
+     * @param bookID    The book ID, as read from the QR code
+     * @param studentID The borrower
+     * @return true if the book was borrowed, false if it is already borrowed, unknown or the ID is invalid
+     * @throws SQLException if the database cannot be reached
+     */
+    static Boolean borrowBook(String bookID, String studentID) throws SQLException {
+        Integer id = parseBookId(bookID);
+        return id != null && DatabaseHandler.borrowBook(id, studentID);
+    }
+
+    /**
+     * @param bookID The book ID, as read from the QR code or typed by a librarian
+     * @return true if the book was borrowed and is now returned
+     * @throws SQLException if the database cannot be reached
+     */
+    static Boolean returnBook(String bookID) throws SQLException {
+        Integer id = parseBookId(bookID);
+        return id != null && DatabaseHandler.returnBook(id);
+    }
+
+    /**
+     * @param bookID A typed book_id or the text of a scanned label in any {@link BookLabelCodec} format
+     */
+    private static Integer parseBookId(String bookID) {
+        BookLabelCodec.Label label = BookLabelCodec.decode(bookID);
+        return label == null ? null : label.bookId();
     }
 }
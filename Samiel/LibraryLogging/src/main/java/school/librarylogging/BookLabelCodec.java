@@ -0,0 +1,268 @@
+package school.librarylogging;
+
+import java.util.Locale;
+
+/**
+ * The text encoded on book labels, shared by the label generators and the scanner.
+ *
+ * Labels are printed in the compact format: {@code LT1} (format and version), the book_id in base 36 and an
+ * ISO 7064 MOD 37,36 check character, e.g. {@code LT1RSI} for book 1000. Every character is in the QR
+ * alphanumeric set, so any book_id fits a version 1 (21x21) symbol even at error correction level Q; the title
+ * is not encoded since the scanner looks the book up anyway. The check character catches every
+ * single-character misread and nearly every swap of two neighbours.
+ *
+ * Labels printed before are still read: {@code book_id=..;book_name=..;borrowed=..},
+ * {@code book_id|book_name[|info]} and a plain book_id.
+ */
+public final class BookLabelCodec {
+
+    /**
+     * Formats a label can be in.
+     */
+    public enum Format {
+        /** {@code LT1} + base-36 id + check character. */
+        COMPACT_V1,
+        /** {@code book_id=..;book_name=..;borrowed=..}, printed by the first QR dialog. */
+        KEY_VALUE,
+        /** {@code book_id|book_name[|info]}. */
+        PIPE,
+        /** Just the book_id in decimal. */
+        NUMERIC
+    }
+
+    /**
+     * A decoded label.
+     *
+     * @param bookId   The book the label belongs to
+     * @param bookName Title printed in the label, or null if the format has none
+     * @param format   Format the label was in
+     */
+    public record Label(int bookId, String bookName, Format format) {
+    }
+
+    static final String PREFIX = "LT";
+    static final char VERSION = '1';
+    private static final int RADIX = 36;
+    // Longest decimal book_id accepted from legacy labels, so it fits an int
+    private static final int MAX_DECIMAL_DIGITS = 9;
+
+    private BookLabelCodec() {
+    }
+
+    /**
+     * @return the compact label text for a book
+     */
+    public static String encode(int bookId) {
+        if (bookId <= 0) {
+            throw new IllegalArgumentException("Invalid book_id: " + bookId);
+        }
+        String body = PREFIX + VERSION + Integer.toString(bookId, RADIX).toUpperCase(Locale.ROOT);
+        return body + checkCharacter(body, 0, body.length());
+    }
+
+    /**
+     * @return whether the text is a compact label of any version, valid or not
+     */
+    public static boolean isCompact(String content) {
+        return content != null && content.length() > PREFIX.length() + 1
+                && content.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    /**
+     * Reads a label in any supported format.
+     *
+     * @return the label, or null if the text is not a book label or its check character does not match
+     */
+    public static Label decode(String content) {
+        Parser parser = new Parser();
+        return parser.parse(content) ? parser.toLabel() : null;
+    }
+
+    /**
+     * Reads labels in a single pass over the text, by index, without allocating: no regex, no split and no
+     * substrings, so one parser can be reused for every frame of a scan loop. The title of a legacy label is
+     * only copied out when asked for.
+     *
+     * Not thread-safe; give each decode thread its own.
+     */
+    public static final class Parser {
+        private static final String KEY_ID = "book_id=";
+        private static final String KEY_NAME = ";book_name=";
+        private static final String KEY_BORROWED = ";borrowed=";
+
+        private String content;
+        private int bookId;
+        private Format format;
+        private int nameStart = -1;
+        private int nameEnd = -1;
+
+        /**
+         * Parses a label, replacing the result of the previous call.
+         *
+         * @return whether the text is a valid book label
+         */
+        public boolean parse(String content) {
+            this.content = content;
+            bookId = 0;
+            format = null;
+            nameStart = -1;
+            nameEnd = -1;
+            if (content == null) {
+                return false;
+            }
+            int start = 0;
+            int end = content.length();
+            while (start < end && Character.isWhitespace(content.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+                end--;
+            }
+            if (end - start > PREFIX.length() + 1 && content.regionMatches(true, start, PREFIX, 0, PREFIX.length())) {
+                return parseCompact(start, end);
+            }
+            if (content.startsWith(KEY_ID, start)) {
+                return parseKeyValue(start, end);
+            }
+            int separator = content.indexOf('|', start);
+            if (separator >= 0 && separator < end) {
+                return parsePipe(start, separator, end);
+            }
+            return accept(parseDecimal(content, start, end), Format.NUMERIC);
+        }
+
+        private boolean parseCompact(int start, int end) {
+            int idStart = start + PREFIX.length() + 1;
+            // Only version 1 exists so far; later versions would be told apart here
+            if (content.charAt(idStart - 1) != VERSION || end - idStart < 2
+                    || Character.toUpperCase(content.charAt(end - 1)) != checkCharacter(content, start, end - 1)) {
+                return false;
+            }
+            long value = 0;
+            for (int i = idStart; i < end - 1; i++) {
+                int digit = Character.digit(content.charAt(i), RADIX);
+                value = value * RADIX + digit;
+                if (digit < 0 || value > Integer.MAX_VALUE) {
+                    return false;
+                }
+            }
+            return accept((int) value, Format.COMPACT_V1);
+        }
+
+        /**
+         * Reads {@code book_id=..;book_name=..;borrowed=..}. The title may itself contain ';'.
+         */
+        private boolean parseKeyValue(int start, int end) {
+            int idStart = start + KEY_ID.length();
+            int name = content.indexOf(KEY_NAME, idStart);
+            if (name >= end) {
+                name = -1;
+            }
+            if (!accept(parseDecimal(content, idStart, name >= 0 ? name : end), Format.KEY_VALUE)) {
+                return false;
+            }
+            if (name >= 0) {
+                nameStart = name + KEY_NAME.length();
+                int borrowed = content.lastIndexOf(KEY_BORROWED, end - KEY_BORROWED.length());
+                nameEnd = borrowed >= nameStart ? borrowed : end;
+            }
+            return true;
+        }
+
+        /**
+         * Reads {@code book_id|book_name[|info]}; both must be present.
+         */
+        private boolean parsePipe(int start, int separator, int end) {
+            int next = content.indexOf('|', separator + 1);
+            int from = separator + 1;
+            int to = next >= 0 && next < end ? next : end;
+            while (from < to && Character.isWhitespace(content.charAt(from))) {
+                from++;
+            }
+            while (to > from && Character.isWhitespace(content.charAt(to - 1))) {
+                to--;
+            }
+            int idEnd = separator;
+            while (idEnd > start && Character.isWhitespace(content.charAt(idEnd - 1))) {
+                idEnd--;
+            }
+            if (from == to || !accept(parseDecimal(content, start, idEnd), Format.PIPE)) {
+                return false;
+            }
+            nameStart = from;
+            nameEnd = to;
+            return true;
+        }
+
+        private boolean accept(int bookId, Format format) {
+            if (bookId <= 0) {
+                return false;
+            }
+            this.bookId = bookId;
+            this.format = format;
+            return true;
+        }
+
+        /**
+         * @return the book_id of the last label parsed, or 0 if it was not one
+         */
+        public int bookId() {
+            return bookId;
+        }
+
+        /**
+         * @return the format of the last label parsed, or null if it was not one
+         */
+        public Format format() {
+            return format;
+        }
+
+        public boolean hasBookName() {
+            return nameStart >= 0;
+        }
+
+        /**
+         * @return the title printed in the last label parsed, or null if it has none; copied on every call
+         */
+        public String bookName() {
+            return nameStart >= 0 ? content.substring(nameStart, nameEnd) : null;
+        }
+
+        /**
+         * @return the last label parsed as an immutable {@link Label}, or null if it was not one
+         */
+        public Label toLabel() {
+            return format == null ? null : new Label(bookId, bookName(), format);
+        }
+    }
+
+    /**
+     * @return the positive decimal number in {@code text[start, end)}, or 0 if it is not one or does not fit
+     */
+    private static int parseDecimal(String text, int start, int end) {
+        if (start == end || end - start > MAX_DECIMAL_DIGITS) {
+            return 0;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * ISO 7064 MOD 37,36 (hybrid) check character over the base-36 characters in {@code body[start, end)}.
+     */
+    static char checkCharacter(CharSequence body, int start, int end) {
+        int product = RADIX;
+        for (int i = start; i < end; i++) {
+            int sum = (product + Character.digit(body.charAt(i), RADIX)) % RADIX;
+            product = ((sum == 0 ? RADIX : sum) * 2) % (RADIX + 1);
+        }
+        return Character.toUpperCase(Character.forDigit((RADIX + 1 - product) % RADIX, RADIX));
+    }
+}
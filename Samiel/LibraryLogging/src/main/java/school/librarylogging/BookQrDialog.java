@@ -5,7 +5,6 @@ import com.google.zxing.WriterException;
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -17,9 +16,12 @@ import java.nio.file.Path;
  */
 public class BookQrDialog extends JDialog {
 
+    // Width and height of generated codes in pixels
+    private static final int QR_SIZE = 300;
+
     private final QrCode qrCode;
     private final JTable bookTable;
-    private final DefaultTableModel tableModel;
+    private final LazyBookTableModel tableModel;
     private final JLabel statusLabel;
     private final JLabel previewLabel;
     private final JButton generateButton;
@@ -36,13 +38,7 @@ public class BookQrDialog extends JDialog {
         setLayout(new BorderLayout(10, 10));
         setLocationRelativeTo(owner);
 
-        String[] columns = {"book_id", "book_name", "borrowed"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new LazyBookTableModel(null);
         bookTable = new JTable(tableModel);
         bookTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         bookTable.getSelectionModel().addListSelectionListener(new SelectionWatcher());
@@ -62,16 +58,28 @@ public class BookQrDialog extends JDialog {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         generateButton = new JButton("Generate QR");
         saveButton = new JButton("Save QR");
+        JButton printAllButton = new JButton("Print All Labels...");
+        JButton exportAllButton = new JButton("Export All Codes...");
         JButton closeButton = new JButton("Close");
 
         saveButton.setEnabled(false);
 
         generateButton.addActionListener(e -> generateQr());
         saveButton.addActionListener(e -> saveQr());
+        printAllButton.addActionListener(e -> printAllLabels(printAllButton));
+        exportAllButton.addActionListener(e -> exportAllCodes(exportAllButton));
         closeButton.addActionListener(e -> dispose());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                tableModel.cancelPending();
+            }
+        });
 
         buttonPanel.add(generateButton);
         buttonPanel.add(saveButton);
+        buttonPanel.add(printAllButton);
+        buttonPanel.add(exportAllButton);
         buttonPanel.add(closeButton);
         add(buttonPanel, BorderLayout.SOUTH);
 
@@ -83,15 +91,10 @@ public class BookQrDialog extends JDialog {
     }
 
     private void loadTableData() {
-        tableModel.setRowCount(0);
-        Object[][] data = DatabaseHandler.findBookAsTableData(null);
-        if (data.length == 0) {
-            statusLabel.setText("No books found in database.");
-            return;
-        }
-        for (Object[] row : data) {
-            tableModel.addRow(row);
-        }
+        statusLabel.setText("Loading books...");
+        AsyncDatabase.onEdt(tableModel.refresh(), ignored -> {
+            statusLabel.setText(tableModel.getRowCount() == 0 ? "No books found in database." : " ");
+        }, error -> statusLabel.setText(error.getMessage()));
     }
 
     private void generateQr() {
@@ -101,17 +104,17 @@ public class BookQrDialog extends JDialog {
             return;
         }
 
-        Object bookIdObj = tableModel.getValueAt(selectedRow, 0);
-        Object bookNameObj = tableModel.getValueAt(selectedRow, 1);
-        Object borrowedObj = tableModel.getValueAt(selectedRow, 2);
-
-        String bookId = String.valueOf(bookIdObj);
-        String bookName = String.valueOf(bookNameObj);
-        String borrowed = String.valueOf(borrowedObj);
+        Book book = tableModel.getBookAt(selectedRow);
+        if (book == null) {
+            statusLabel.setText("The selected book is still loading.");
+            return;
+        }
+        String bookId = String.valueOf(book.bookId());
+        String bookName = book.bookName();
 
-        String payload = String.format("book_id=%s;book_name=%s;borrowed=%s", bookId, bookName, borrowed);
+        String payload = QrCode.bookPayload(book);
         try {
-            currentQrImage = qrCode.createQrImage(payload, 300);
+            currentQrImage = qrCode.createQrImage(payload, QR_SIZE);
             currentFileNameBase = sanitizeFileName(bookId + "_" + bookName);
             previewLabel.setIcon(new ImageIcon(currentQrImage));
             previewLabel.setText(null);
@@ -149,6 +152,82 @@ public class BookQrDialog extends JDialog {
         }
     }
 
+    private void printAllLabels(JButton printAllButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Folder for Label Sheets");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path directory = chooser.getSelectedFile().toPath();
+        printAllButton.setEnabled(false);
+        statusLabel.setText("Printing labels to " + directory + "...");
+
+        // Sheets are rendered in the background; progress is published after every written sheet
+        new SwingWorker<LabelSheetGenerator.Result, String>() {
+            @Override
+            protected LabelSheetGenerator.Result doInBackground() throws Exception {
+                return DatabaseHandler.generateLabelSheets(directory, (labels, sheets, labelsPerSecond) ->
+                        publish(String.format("Printed %,d labels on %,d sheets (%,.0f labels/s)", labels, sheets, labelsPerSecond)));
+            }
+
+            @Override
+            protected void process(java.util.List<String> chunks) {
+                statusLabel.setText(chunks.get(chunks.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                printAllButton.setEnabled(true);
+                try {
+                    LabelSheetGenerator.Result result = get();
+                    statusLabel.setText(String.format("Printed %,d labels on %,d sheets in %.1f s (%,.0f labels/s) to %s",
+                            result.labels(), result.sheets(), result.elapsedMillis() / 1000.0,
+                            result.labelsPerSecond(), directory));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    statusLabel.setText("Failed to print labels: " + ex.getCause().getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void exportAllCodes(JButton exportAllButton) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export QR Codes");
+        chooser.setSelectedFile(new File("qr-codes.zip"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File selectedFile = chooser.getSelectedFile();
+        String fileName = selectedFile.getName().toLowerCase().endsWith(".zip")
+                ? selectedFile.getName()
+                : selectedFile.getName() + ".zip";
+        Path destination = selectedFile.toPath().resolveSibling(fileName);
+        exportAllButton.setEnabled(false);
+        statusLabel.setText("Exporting QR codes to " + destination + "...");
+
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return DatabaseHandler.exportQrArchive(destination, QR_SIZE);
+            }
+
+            @Override
+            protected void done() {
+                exportAllButton.setEnabled(true);
+                try {
+                    statusLabel.setText(String.format("Exported %,d QR codes to %s", get(), destination));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    statusLabel.setText("Failed to export QR codes: " + ex.getCause().getMessage());
+                }
+            }
+        }.execute();
+    }
+
     private static String sanitizeFileName(String candidate) {
         return candidate.replaceAll("[^a-zA-Z0-9-_]", "_");
     }
@@ -0,0 +1,133 @@
+package school.librarylogging;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Storage backend for book records.
+ * {@link DatabaseHandler} delegates every operation to the repository selected at startup,
+ * so the GUI does not care whether books live in MySQL or in the embedded data file.
+ *
+ * Failures are reported as {@link SQLException} regardless of the backend.
+ */
+public interface BookRepository extends AutoCloseable {
+
+    /**
+     * Adds a new book.
+     *
+     * @param bookName Title of the book
+     * @param borrowed Borrowed status (0 or 1)
+     * @return the generated book_id
+     */
+    int addBook(String bookName, int borrowed) throws SQLException;
+
+    /**
+     * Adds a chunk of books atomically: either every book is stored or none is.
+     * The book_id of each entry is ignored and generated by the backend.
+     *
+     * @param books Books to add
+     */
+    void addBooks(List<Book> books) throws SQLException;
+
+    /**
+     * Adds a chunk of books like {@link #addBooks(List)} and, in the same transaction, records how far an
+     * import has got, so a crash never leaves the books and the progress out of step.
+     *
+     * @param books     Books to add, possibly none
+     * @param importKey Identifies the import, e.g. the path of the catalog file
+     * @param committed Records of the import committed once this chunk is
+     */
+    void addBooks(List<Book> books, String importKey, long committed) throws SQLException;
+
+    /**
+     * @return records of the import committed so far; 0 if it never ran or was cleared
+     */
+    long getImportProgress(String importKey) throws SQLException;
+
+    /**
+     * Forgets the progress of a completed import.
+     */
+    void clearImportProgress(String importKey) throws SQLException;
+
+    /**
+     * @param bookId The ID of the book to remove
+     * @return true if a book was removed
+     */
+    boolean removeBook(int bookId) throws SQLException;
+
+    /**
+     * @param bookId      The ID of the book to update
+     * @param newBookName The new name (null or empty to keep unchanged)
+     * @param borrowed    The borrowed status (0 or 1)
+     * @return true if a book was updated
+     */
+    boolean updateBook(int bookId, String newBookName, int borrowed) throws SQLException;
+
+    /**
+     * Sets the borrowed status of every book with the given name.
+     *
+     * @return number of books updated
+     */
+    int updateBorrowedByName(String bookName, int borrowed) throws SQLException;
+
+    /**
+     * @param bookName Optional substring filter on book name (null or empty for all books)
+     * @return matching books ordered by book_id
+     */
+    List<Book> findBooks(String bookName) throws SQLException;
+
+    /**
+     * Looks up books by primary key.
+     *
+     * @param bookIds IDs to fetch
+     * @return the books that exist, in no particular order
+     */
+    List<Book> findBooksByIds(List<Integer> bookIds) throws SQLException;
+
+    /**
+     * Returns one page of books in book_id order using keyset pagination,
+     * so the cost of a page does not grow with how far into the catalog it is.
+     *
+     * @param bookName    Optional substring filter on book name (null or empty for all books)
+     * @param afterBookId Only books with a larger book_id are returned (0 for the first page)
+     * @param limit       Maximum number of books in the page
+     * @return up to {@code limit} books ordered by book_id
+     */
+    List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException;
+
+    /**
+     * Marks the book as borrowed only if it is currently available, and records the loan,
+     * atomically. Of several stations borrowing the same copy at once, exactly one succeeds.
+     *
+     * @param bookId   The ID of the book
+     * @param borrower Name or student ID of the borrower
+     * @return true if the book was available and is now borrowed; false if it was already borrowed or does not exist
+     */
+    boolean borrowBook(int bookId, String borrower) throws SQLException;
+
+    /**
+     * Marks the book as returned only if it is currently borrowed, and closes its open loan, atomically.
+     *
+     * @param bookId The ID of the book
+     * @return true if the book was borrowed and is now returned
+     */
+    boolean returnBook(int bookId) throws SQLException;
+
+    /**
+     * Applies loan events in order within one transaction, each with the same conditional semantics as
+     * {@link #borrowBook} or {@link #returnBook}. A later event sees the effect of an earlier one on the same book.
+     * The whole batch costs a single commit, and fails or succeeds as a whole.
+     *
+     * @param events Borrows and returns to apply
+     * @return for every event, whether it changed the book's state
+     */
+    boolean[] applyLoanEvents(List<LoanEvent> events) throws SQLException;
+
+    /**
+     * @return short human readable description of the backend, for logging
+     */
+    String describe();
+
+    @Override
+    void close();
+}
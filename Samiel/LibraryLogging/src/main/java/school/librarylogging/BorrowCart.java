@@ -0,0 +1,62 @@
+package school.librarylogging;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Books collected in batch scanning mode, each at most once, in the order they were scanned.
+ * Filled by the decode thread and read by the UI, so every method is synchronized.
+ */
+public class BorrowCart {
+
+    private final Map<Integer, String> labels = new LinkedHashMap<>();
+
+    /**
+     * @param bookId The ID of the book
+     * @param label  Text shown for the book in the cart
+     * @return true if the book was not in the cart yet
+     */
+    public synchronized boolean add(int bookId, String label) {
+        return labels.putIfAbsent(bookId, label) == null;
+    }
+
+    public synchronized boolean contains(int bookId) {
+        return labels.containsKey(bookId);
+    }
+
+    public synchronized void remove(int bookId) {
+        labels.remove(bookId);
+    }
+
+    public synchronized void clear() {
+        labels.clear();
+    }
+
+    public synchronized int size() {
+        return labels.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return labels.isEmpty();
+    }
+
+    /**
+     * @return the book IDs in scan order
+     */
+    public synchronized List<Integer> getBookIds() {
+        return new ArrayList<>(labels.keySet());
+    }
+
+    /**
+     * @return the labels in scan order
+     */
+    public synchronized List<String> getLabels() {
+        return new ArrayList<>(labels.values());
+    }
+
+    public synchronized String getLabel(int bookId) {
+        return labels.get(bookId);
+    }
+}
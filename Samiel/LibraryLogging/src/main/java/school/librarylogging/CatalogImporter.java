@@ -0,0 +1,229 @@
+package school.librarylogging;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams a CSV or TSV catalog file into the book repository in fixed-size chunks.
+ *
+ * Expected columns: {@code book_name[,borrowed]}, with an optional header line.
+ * CSV fields may be quoted ("..."), with "" for a literal quote. Files ending in .tsv are tab separated.
+ *
+ * Each chunk is committed in one transaction together with the number of records of the file it brings
+ * the import to ({@link BookRepository#addBooks(List, String, long)}), keyed by the catalog's absolute path.
+ * Running the import again after a failure skips exactly the records already committed, even if the
+ * process died right after a commit. The progress is cleared when the import completes.
+ */
+public class CatalogImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Receives progress after every committed chunk.
+     */
+    public interface ProgressListener {
+        /**
+         * @param committed     Records committed so far, including those from earlier runs
+         * @param rowsPerSecond Throughput of the current run
+         */
+        void onProgress(long committed, double rowsPerSecond);
+    }
+
+    /**
+     * Outcome of an import run.
+     *
+     * @param imported      Records committed by this run
+     * @param resumedFrom   Records skipped because an earlier run already committed them
+     * @param skipped       Malformed records ignored (empty book name)
+     * @param elapsedMillis Duration of this run
+     */
+    public record Result(long imported, long resumedFrom, long skipped, long elapsedMillis) {
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final BookRepository repository;
+    private final int chunkSize;
+    private final ProgressListener listener;
+
+    public CatalogImporter(BookRepository repository, int chunkSize, ProgressListener listener) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.repository = repository;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Imports the catalog, resuming after the last committed chunk of a previous failed run.
+     *
+     * @param catalog CSV or TSV file
+     * @return import statistics
+     * @throws IOException  if the file cannot be read
+     * @throws SQLException if a chunk cannot be committed; the progress is kept for resuming
+     */
+    public Result importFile(Path catalog) throws IOException, SQLException {
+        char separator = catalog.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".tsv") ? '\t' : ',';
+        String importKey = catalog.toAbsolutePath().normalize().toString();
+        long resumeFrom = repository.getImportProgress(importKey);
+
+        long start = System.nanoTime();
+        long recordNumber = 0;
+        long imported = 0;
+        long skipped = 0;
+        int inChunk = 0;
+        List<Book> chunk = new ArrayList<>(chunkSize);
+
+        try (BufferedReader reader = Files.newBufferedReader(catalog, StandardCharsets.UTF_8)) {
+            RecordReader records = new RecordReader(reader, separator);
+            List<String> fields;
+            boolean first = true;
+            while ((fields = records.next()) != null) {
+                if (first) {
+                    first = false;
+                    if (fields.get(0).trim().equalsIgnoreCase("book_name")) {
+                        continue;
+                    }
+                }
+                if (recordNumber++ < resumeFrom) {
+                    continue;
+                }
+
+                String bookName = fields.get(0).trim();
+                if (bookName.isEmpty()) {
+                    skipped++;
+                } else {
+                    chunk.add(new Book(0, bookName, parseBorrowed(fields)));
+                }
+
+                if (++inChunk >= chunkSize) {
+                    imported += chunk.size();
+                    commit(chunk, recordNumber, importKey, resumeFrom, start);
+                    inChunk = 0;
+                }
+            }
+            if (inChunk > 0) {
+                imported += chunk.size();
+                commit(chunk, recordNumber, importKey, resumeFrom, start);
+            }
+        }
+
+        repository.clearImportProgress(importKey);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new Result(imported, resumeFrom, skipped, elapsedMillis);
+    }
+
+    /**
+     * Commits a chunk together with how many records of the file are now durable.
+     */
+    private void commit(List<Book> chunk, long recordNumber, String importKey, long resumeFrom, long start)
+            throws SQLException {
+        repository.addBooks(chunk, importKey, recordNumber);
+        chunk.clear();
+        if (listener != null) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            listener.onProgress(recordNumber, seconds > 0 ? (recordNumber - resumeFrom) / seconds : 0);
+        }
+    }
+
+    private static int parseBorrowed(List<String> fields) {
+        if (fields.size() < 2) {
+            return 0;
+        }
+        String value = fields.get(1).trim();
+        return "1".equals(value) || "true".equalsIgnoreCase(value) ? 1 : 0;
+    }
+
+    /**
+     * Minimal streaming CSV/TSV record reader. Reads one character at a time from a buffered reader,
+     * so the file never has to fit in memory. Quoted fields may contain separators and line breaks.
+     */
+    static final class RecordReader {
+        private final Reader reader;
+        private final char separator;
+        private final StringBuilder field = new StringBuilder();
+        private int pending = -2;
+
+        RecordReader(Reader reader, char separator) {
+            this.reader = reader;
+            this.separator = separator;
+        }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        /**
+         * @return fields of the next non-blank record, or null at end of input
+         */
+        List<String> next() throws IOException {
+            while (true) {
+                List<String> fields = new ArrayList<>();
+                field.setLength(0);
+                boolean quoted = false;
+                boolean sawData = false;
+                int c;
+                while (true) {
+                    c = read();
+                    if (c == -1) {
+                        break;
+                    }
+                    if (quoted) {
+                        if (c == '"') {
+                            int nextChar = read();
+                            if (nextChar == '"') {
+                                field.append('"');
+                            } else {
+                                quoted = false;
+                                pending = nextChar;
+                            }
+                        } else {
+                            field.append((char) c);
+                        }
+                    } else if (c == '"' && field.length() == 0) {
+                        quoted = true;
+                        sawData = true;
+                    } else if (c == separator) {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                        sawData = true;
+                    } else if (c == '\n' || c == '\r') {
+                        if (c == '\r') {
+                            int nextChar = read();
+                            if (nextChar != '\n') {
+                                pending = nextChar;
+                            }
+                        }
+                        break;
+                    } else {
+                        field.append((char) c);
+                        sawData = true;
+                    }
+                }
+                if (sawData || field.length() > 0) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (c == -1) {
+                    return null;
+                }
+                // Blank line, keep reading
+            }
+        }
+    }
+}
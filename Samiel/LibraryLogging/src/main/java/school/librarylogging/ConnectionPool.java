@@ -0,0 +1,371 @@
+package school.librarylogging;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool shared by the GUI, the scanner thread and every dialog.
+ * Keeps at least {@code minSize} connections open, never more than {@code maxSize},
+ * validates a connection before handing it out and closes connections idle for too long.
+ *
+ * A thread that already holds a lease gets the same connection back, so nested calls
+ * (for example a lookup made while a transaction is open) never need a second connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+    private int openCount;
+    private boolean closed;
+
+    // Metrics
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final Histogram waitMicros = new Histogram("us");
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong invalidCount = new AtomicLong();
+    private int activeCount;
+
+    public ConnectionPool(String url, String username, String password,
+                          int minSize, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens connections until the pool holds {@code minSize} of them.
+     *
+     * @throws SQLException if the database cannot be reached
+     */
+    public void warmUp() throws SQLException {
+        while (true) {
+            synchronized (this) {
+                if (closed || openCount >= minSize) {
+                    return;
+                }
+                openCount++;
+            }
+            Connection connection;
+            try {
+                connection = DriverManager.getConnection(url, username, password);
+            } catch (SQLException ex) {
+                synchronized (this) {
+                    openCount--;
+                }
+                throw ex;
+            }
+            synchronized (this) {
+                idle.push(new IdleConnection(connection, System.currentTimeMillis()));
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Leases a connection for the current thread. Close the lease to give it back.
+     * If this thread already holds a lease, the same connection is shared.
+     *
+     * @return a lease wrapping a validated connection
+     * @throws SQLException if no connection becomes available within the borrow timeout
+     */
+    public Lease lease() throws SQLException {
+        Lease existing = currentLease.get();
+        if (existing != null) {
+            existing.depth++;
+            return existing;
+        }
+
+        long start = System.nanoTime();
+        Connection connection = acquire(start);
+        long waited = System.nanoTime() - start;
+
+        leaseCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        waitMicros.record(waited / 1000);
+
+        Lease lease = new Lease(connection);
+        currentLease.set(lease);
+        return lease;
+    }
+
+    private Connection acquire(long start) throws SQLException {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        while (true) {
+            IdleConnection candidate = null;
+            boolean mayOpen = false;
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pop();
+                        break;
+                    }
+                    if (openCount < maxSize) {
+                        openCount++;
+                        mayOpen = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection");
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    }
+                }
+                activeCount++;
+            }
+
+            if (mayOpen) {
+                try {
+                    return DriverManager.getConnection(url, username, password);
+                } catch (SQLException ex) {
+                    discard(null);
+                    throw ex;
+                }
+            }
+
+            if (isValid(candidate.connection)) {
+                return candidate.connection;
+            }
+            invalidCount.incrementAndGet();
+            discard(candidate.connection);
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void release(Connection connection) {
+        boolean healthy;
+        try {
+            healthy = !connection.isClosed();
+            if (healthy && !connection.getAutoCommit()) {
+                // Never hand out a connection with a half-finished transaction
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            healthy = false;
+        }
+
+        if (!healthy) {
+            discard(connection);
+            return;
+        }
+        boolean closeNow;
+        synchronized (this) {
+            activeCount--;
+            closeNow = closed;
+            if (!closeNow) {
+                idle.push(new IdleConnection(connection, System.currentTimeMillis()));
+                notifyAll();
+            } else {
+                openCount--;
+            }
+        }
+        if (closeNow) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Drops a leased connection that turned out to be unusable and frees its slot.
+     */
+    private void discard(Connection connection) {
+        synchronized (this) {
+            activeCount--;
+            openCount--;
+            notifyAll();
+        }
+        if (connection != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Deque<Connection> toClose = new ArrayDeque<>();
+        synchronized (this) {
+            // Oldest connections sit at the tail of the deque
+            Iterator<IdleConnection> it = idle.descendingIterator();
+            while (it.hasNext() && openCount > minSize) {
+                IdleConnection candidate = it.next();
+                if (candidate.idleSince >= cutoff) {
+                    break;
+                }
+                it.remove();
+                openCount--;
+                toClose.add(candidate.connection);
+            }
+        }
+        evictedCount.addAndGet(toClose.size());
+        toClose.forEach(ConnectionPool::closeQuietly);
+        if (!toClose.isEmpty()) {
+            try {
+                warmUp();
+            } catch (SQLException ex) {
+                System.out.println("Error! " + ex.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Connection is being thrown away anyway
+        }
+    }
+
+    @Override
+    public void close() {
+        Deque<IdleConnection> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            openCount -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        evictor.shutdownNow();
+        toClose.forEach(c -> closeQuietly(c.connection));
+    }
+
+    public synchronized int getActiveCount() {
+        return activeCount;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * @return average time callers waited for a connection, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long leases = leaseCount.get();
+        return leases == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / leases;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return distribution of the time callers waited for a connection, in microseconds
+     */
+    public Histogram getWaitTime() {
+        return waitMicros;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getInvalidCount() {
+        return invalidCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[active=%d, idle=%d, open=%d/%d, leases=%d, avgWait=%.2fms, maxWait=%.2fms, timeouts=%d, evicted=%d, invalid=%d]",
+                getActiveCount(), getIdleCount(), getOpenCount(), maxSize, getLeaseCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount(), getEvictedCount(), getInvalidCount());
+    }
+
+    private record IdleConnection(Connection connection, long idleSince) {
+    }
+
+    /**
+     * A connection leased to one thread. Closing the outermost lease returns the connection to the pool;
+     * closing it again does nothing.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Connection connection;
+        private int depth = 1;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public void close() {
+            if (depth == 0 || --depth > 0) {
+                // Already released, or still held by an outer caller
+                return;
+            }
+            currentLease.remove();
+            release(connection);
+        }
+    }
+}
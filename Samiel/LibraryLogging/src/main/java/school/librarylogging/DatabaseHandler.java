@@ -1,23 +1,67 @@
 package school.librarylogging;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class DatabaseHandler {
 
-	private static final String url = "jdbc:mysql://localhost:3306/library_logging_system";
+	private static final String url = "jdbc:mysql://localhost:3306/library_logging_system?rewriteBatchedStatements=true";
 	private static final String username = "root";
 	private static final String password = "";
 	protected static final Scanner in = new Scanner(System.in);
-	public static Connection conn;
+
+	// Pool sizing, overridable with -Dlibrarylogging.pool.* system properties
+	private static final int POOL_MIN_SIZE = Integer.getInteger("librarylogging.pool.min", 2);
+	private static final int POOL_MAX_SIZE = Integer.getInteger("librarylogging.pool.max", 10);
+	private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("librarylogging.pool.idleTimeoutMs", 300_000L);
+	private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("librarylogging.pool.borrowTimeoutMs", 5_000L);
+
+	// Storage backend: "mysql" (default) or "embedded", selected with -Dlibrarylogging.storage
+	private static final String STORAGE = System.getProperty("librarylogging.storage", "mysql");
+	private static final String EMBEDDED_FILE = System.getProperty("librarylogging.embedded.file", "library_logging_system.db");
+
+	// Rows per committed chunk for catalog imports, -Dlibrarylogging.import.chunkSize
+	static final int IMPORT_CHUNK_SIZE = Integer.getInteger("librarylogging.import.chunkSize", CatalogImporter.DEFAULT_CHUNK_SIZE);
+
+	private static final int INDEX_BUILD_PAGE_SIZE = 5000;
+
+	// Book row cache sizing, -Dlibrarylogging.cache.capacity and -Dlibrarylogging.cache.ttlMs
+	private static final int CACHE_CAPACITY = Integer.getInteger("librarylogging.cache.capacity", 10_000);
+	private static final long CACHE_TTL_MS = Long.getLong("librarylogging.cache.ttlMs", 60_000L);
+
+	// Group commit of borrow/return events, -Dlibrarylogging.loans.maxDelayMs and -Dlibrarylogging.loans.maxBatch
+	private static final long LOAN_MAX_DELAY_MS = Long.getLong("librarylogging.loans.maxDelayMs", LoanEventWriter.DEFAULT_MAX_DELAY_MS);
+	private static final int LOAN_MAX_BATCH = Integer.getInteger("librarylogging.loans.maxBatch", LoanEventWriter.DEFAULT_MAX_BATCH);
+
+	static BookRepository repository;
+	private static volatile LoanEventWriter loanWriter;
+	static final TitleSearchIndex searchIndex = new TitleSearchIndex();
+	static final BookCache bookCache = new BookCache(CACHE_CAPACITY, CACHE_TTL_MS);
+
+	// Cache and group commit state, published through Metrics
+	static {
+		Metrics.gauge("db.cache.hitRate", bookCache::getHitRate);
+		Metrics.gauge("db.cache.size", bookCache::size);
+		Metrics.gauge("db.cache.evictions", bookCache::getEvictionCount);
+		Metrics.gauge("db.loans.queued", () -> loanWriter == null ? 0 : loanWriter.getQueuedCount());
+		Metrics.gauge("db.loans.failedBatches", () -> loanWriter == null ? 0 : loanWriter.getFailedBatchCount());
+	}
 
 	public static void main(String[] args) {
 
 		try {
-			conn = DriverManager.getConnection(url, username, password);
-			System.out.println("Connected to database!");
+			// Every query is timed and its failures counted, see Metrics
+			repository = new MeteredBookRepository(openRepository(STORAGE));
+			System.out.println("Connected to database! " + repository.describe());
+			rebuildSearchIndex();
 
 		} catch (SQLException ex) {
 			System.out.println(ex.getMessage());
@@ -26,36 +70,249 @@ public class DatabaseHandler {
 	}
 
 	/**
-	 * Helper method to build book query based on filter.
-	 * Reduces code duplication between findBook() and findBookAsTableData().
-	 * 
+	 * Opens the storage backend with the given name.
+	 *
+	 * @param storage "mysql" or "embedded"
+	 * @return the opened repository
+	 * @throws SQLException if the backend cannot be reached
+	 */
+	static BookRepository openRepository(String storage) throws SQLException {
+		switch (storage.toLowerCase()) {
+			case "embedded":
+				return new EmbeddedBookRepository(Path.of(EMBEDDED_FILE));
+			case "mysql":
+				ConnectionPool pool = new ConnectionPool(url, username, password,
+						POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS);
+				MySqlBookRepository mysql = new MySqlBookRepository(pool);
+				Metrics.gauge("db.pool.active", pool::getActiveCount);
+				Metrics.gauge("db.pool.idle", pool::getIdleCount);
+				Metrics.gauge("db.pool.timeouts", pool::getTimeoutCount);
+				Metrics.register("db.pool.waitTime", pool.getWaitTime());
+				try {
+					pool.warmUp();
+					mysql.ensureSchema();
+				} catch (SQLException ex) {
+					// Keep the repository: the pool retries on the next lease once the server is back
+					System.out.println(ex.getMessage());
+				}
+				return mysql;
+			default:
+				throw new SQLException("Unknown storage backend: " + storage);
+		}
+	}
+
+	/**
+	 * @return the active repository
+	 * @throws SQLException if {@link #main(String[])} has not opened one yet
+	 */
+	private static BookRepository repository() throws SQLException {
+		if (repository == null) {
+			throw new SQLException("Database is not connected");
+		}
+		return repository;
+	}
+
+	/**
+	 * @return the loan event writer for the active repository, started on first use
+	 * @throws SQLException if no repository is open
+	 */
+	private static LoanEventWriter loanWriter() throws SQLException {
+		BookRepository current = repository();
+		LoanEventWriter writer = loanWriter;
+		if (writer != null && writer.getRepository() == current) {
+			return writer;
+		}
+		synchronized (DatabaseHandler.class) {
+			if (loanWriter == null || loanWriter.getRepository() != current) {
+				if (loanWriter != null) {
+					loanWriter.close();
+				}
+				loanWriter = new LoanEventWriter(current, LOAN_MAX_DELAY_MS, LOAN_MAX_BATCH);
+				Metrics.register("db.loans.commitTime", loanWriter.getCommitLatency());
+				Metrics.register("db.loans.batchSize", loanWriter.getBatchSizes());
+			}
+			return loanWriter;
+		}
+	}
+
+	/**
+	 * Rebuilds the title search index on a background thread.
+	 * Searches use SQL until the build completes; a build still running is superseded by this one.
+	 */
+	static void rebuildSearchIndex() {
+		searchIndex.invalidate();
+		Thread builder = new Thread(() -> {
+			try {
+				BookRepository source = repository();
+				if (searchIndex.build(afterBookId -> source.findBookPage(null, afterBookId, INDEX_BUILD_PAGE_SIZE))) {
+					System.out.println("Search index ready: " + searchIndex);
+				}
+			} catch (Exception ex) {
+				System.out.println("Error! Search index build failed: " + ex.getMessage());
+			}
+		}, "search-index-builder");
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	/**
+	 * Finds books by name, using the trigram index when it is ready and a LIKE query otherwise.
+	 * Indexed results come back ranked best match first; both paths return every match, so the table shows
+	 * the same books whether or not the index is warm.
+	 *
 	 * @param bookName Optional filter by book name (null or empty for all books)
-	 * @return SQL query string
+	 * @return matching books
 	 */
-	private static String buildBookQuery(String bookName) {
-		if (bookName == null || bookName.trim().isEmpty()) {
-			return "SELECT book_id, book_name, borrowed FROM book_record";
-		} else {
-			return "SELECT book_id, book_name, borrowed FROM book_record WHERE book_name LIKE ?";
+	private static List<Book> searchBooks(String bookName) throws SQLException {
+		if (bookName == null || bookName.trim().isEmpty() || !searchIndex.isReady()) {
+			return repository().findBooks(bookName);
 		}
+		List<Integer> ranked = searchIndex.search(bookName, 0);
+		Map<Integer, Book> byId = findBooksByIds(ranked);
+		List<Book> books = new ArrayList<>(ranked.size());
+		for (int bookId : ranked) {
+			Book book = byId.get(bookId);
+			if (book != null) {
+				books.add(book);
+			}
+		}
+		return books;
+	}
+
+	/**
+	 * Looks up one book through the cache, reading the database only on a miss.
+	 *
+	 * @param bookId The ID of the book
+	 * @return the book, or null if there is no book with that ID
+	 * @throws SQLException if the database cannot be read
+	 */
+	static Book findBookById(int bookId) throws SQLException {
+		Book cached = bookCache.get(bookId);
+		if (cached != null) {
+			return cached;
+		}
+		long token = bookCache.loadToken();
+		List<Book> found = repository().findBooksByIds(List.of(bookId));
+		if (found.isEmpty()) {
+			return null;
+		}
+		bookCache.putLoaded(token, found.get(0));
+		return found.get(0);
+	}
+
+	/**
+	 * Looks up several books through the cache with one database query for all misses.
+	 *
+	 * @param bookIds IDs of the books
+	 * @return the books found, keyed by ID
+	 */
+	private static Map<Integer, Book> findBooksByIds(List<Integer> bookIds) throws SQLException {
+		Map<Integer, Book> byId = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (int bookId : bookIds) {
+			Book cached = bookCache.get(bookId);
+			if (cached != null) {
+				byId.put(bookId, cached);
+			} else {
+				missing.add(bookId);
+			}
+		}
+		if (!missing.isEmpty()) {
+			long token = bookCache.loadToken();
+			for (Book book : repository().findBooksByIds(missing)) {
+				bookCache.putLoaded(token, book);
+				byId.put(book.bookId(), book);
+			}
+		}
+		return byId;
 	}
 
 	/*
 	 * USE TO ADD DATA
+	 * Throws so GUI callers can report the failure; see AsyncDatabase for calling it off the EDT.
 	 */
-	static void addBookDataToDatabase(String bookName, int isBorrowed) {
-		String query = "INSERT INTO book_record (book_name, borrowed) VALUES (?, ?)";
+	static int addBookDataToDatabase(String bookName, int isBorrowed) throws SQLException {
 		// Ensure isBorrowed is a valid value (0 or 1)
 		if (isBorrowed < 0 || isBorrowed > 1) {
 			isBorrowed = 0;
 		}
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			statement.setString(1, bookName);
-			statement.setInt(2, isBorrowed);
-			statement.executeUpdate();
+		try {
+			int bookId = repository().addBook(bookName, isBorrowed);
+			searchIndex.add(bookId, bookName);
+			bookCache.put(new Book(bookId, bookName, isBorrowed));
 			System.out.println("Data added successfully!");
+			return bookId;
 		} catch (SQLException ex) {
 			System.out.println("Error!" + ex.getMessage());
+			throw ex;
+		}
+	}
+
+	/**
+	 * Bulk-loads a CSV/TSV catalog in committed chunks, resuming an earlier failed import of the same file.
+	 *
+	 * @param catalog The catalog file
+	 * @param listener Receives progress after every committed chunk (may be null)
+	 * @return import statistics
+	 * @throws IOException if the file cannot be read
+	 * @throws SQLException if a chunk cannot be committed
+	 */
+	static CatalogImporter.Result importCatalog(Path catalog, CatalogImporter.ProgressListener listener)
+			throws IOException, SQLException {
+		CatalogImporter.Result result;
+		try {
+			result = new CatalogImporter(repository(), IMPORT_CHUNK_SIZE, listener).importFile(catalog);
+		} finally {
+			// Imported rows bypass the per-book index hooks, so re-index whatever was committed
+			rebuildSearchIndex();
+		}
+		System.out.printf("Imported %d books in %d ms (%.0f rows/s)%n",
+				result.imported(), result.elapsedMillis(), result.rowsPerSecond());
+		return result;
+	}
+
+	/**
+	 * Prints QR label sheets for the whole catalog, streaming it one sheet of books at a time.
+	 *
+	 * @param directory Directory for the sheet PNGs
+	 * @param listener Receives progress after every written sheet (may be null)
+	 * @return labels and sheets written, and the throughput
+	 * @throws Exception if the catalog cannot be read or a sheet cannot be written
+	 */
+	static LabelSheetGenerator.Result generateLabelSheets(Path directory, LabelSheetGenerator.ProgressListener listener)
+			throws Exception {
+		BookRepository source = repository();
+		LabelSheetGenerator generator = new LabelSheetGenerator(new QrCode(), listener);
+		return generator.generate(afterBookId -> source.findBookPage(null, afterBookId, generator.getLabelsPerSheet()),
+				directory);
+	}
+
+	/**
+	 * Exports the QR code of every book in the catalog as {@code book-<id>.png} in one zip file, streaming the
+	 * catalog a page at a time.
+	 *
+	 * @param destination Zip file, replaced if it exists
+	 * @param size Width and height of every code in pixels
+	 * @return the number of codes exported
+	 * @throws Exception if the catalog cannot be read or the archive cannot be written
+	 */
+	static int exportQrArchive(Path destination, int size) throws Exception {
+		long start = System.nanoTime();
+		QrCode qrCode = new QrCode();
+		BookRepository source = repository();
+		try (QrCodeArchive archive = new QrCodeArchive(qrCode, destination, size)) {
+			int afterBookId = 0;
+			List<Book> page;
+			while (!(page = source.findBookPage(null, afterBookId, 500)).isEmpty()) {
+				for (Book book : page) {
+					archive.add("book-" + book.bookId() + ".png", QrCode.bookPayload(book));
+				}
+				afterBookId = page.get(page.size() - 1).bookId();
+			}
+			long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+			System.out.printf("Exported %d QR codes (%d KB) in %d ms%n",
+					archive.getCount(), archive.getBytes() / 1024, elapsedMillis);
+			return archive.getCount();
 		}
 	}
 
@@ -63,19 +320,22 @@ public class DatabaseHandler {
 	 * Removes a book from the database by its ID.
 	 * 
 	 * @param bookId The ID of the book to remove
+	 * @return true if the book existed and was removed
+	 * @throws SQLException if the database cannot be updated
 	 */
-	static void removeBookFromDatabase(int bookId) {
-		String query = "DELETE FROM book_record WHERE book_id = ?";
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			statement.setInt(1, bookId);
-			int rowsAffected = statement.executeUpdate();
-			if (rowsAffected > 0) {
+	static boolean removeBookFromDatabase(int bookId) throws SQLException {
+		try {
+			if (repository().removeBook(bookId)) {
+				searchIndex.remove(bookId);
+				bookCache.invalidate(bookId);
 				System.out.println("Book removed successfully!");
-			} else {
-				System.out.println("No book found with ID: " + bookId);
+				return true;
 			}
+			System.out.println("No book found with ID: " + bookId);
+			return false;
 		} catch (SQLException ex) {
 			System.out.println("Error! " + ex.getMessage());
+			throw ex;
 		}
 	}
 
@@ -85,44 +345,143 @@ public class DatabaseHandler {
 	 * @param bookId The ID of the book to update
 	 * @param newBookName The new name for the book (empty to keep unchanged)
 	 * @param isBorrowed The borrowed status (0 or 1)
+	 * @return true if the book existed and was updated
+	 * @throws SQLException if the database cannot be updated
 	 */
-	static void updateBookInDatabase(int bookId, String newBookName, int isBorrowed) {
-		String query;
-		if (newBookName != null && !newBookName.trim().isEmpty()) {
-			query = "UPDATE book_record SET book_name = ?, borrowed = ? WHERE book_id = ?";
-		} else {
-			query = "UPDATE book_record SET borrowed = ? WHERE book_id = ?";
-		}
-		
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			if (newBookName != null && !newBookName.trim().isEmpty()) {
-				statement.setString(1, newBookName.trim());
-				statement.setInt(2, isBorrowed);
-				statement.setInt(3, bookId);
-			} else {
-				statement.setInt(1, isBorrowed);
-				statement.setInt(2, bookId);
-			}
-			int rowsAffected = statement.executeUpdate();
-			if (rowsAffected > 0) {
+	static boolean updateBookInDatabase(int bookId, String newBookName, int isBorrowed) throws SQLException {
+		try {
+			boolean updated = repository().updateBook(bookId, newBookName, isBorrowed);
+			bookCache.invalidate(bookId);
+			if (updated) {
+				if (newBookName != null && !newBookName.trim().isEmpty()) {
+					searchIndex.update(bookId, newBookName.trim());
+				}
 				System.out.println("Book updated successfully!");
-			} else {
-				System.out.println("No book found with ID: " + bookId);
+				return true;
+			}
+			System.out.println("No book found with ID: " + bookId);
+			return false;
+		} catch (SQLException ex) {
+			System.out.println("Error! " + ex.getMessage());
+			throw ex;
+		}
+	}
+
+	/**
+	 * Borrows a book with a single conditional update, recording the loan in the same transaction.
+	 * Blocks until the group commit holding the event completes.
+	 *
+	 * @param bookId The ID of the book
+	 * @param borrower Name or student ID of the borrower
+	 * @return true if the book was available and is now borrowed
+	 * @throws SQLException if the database cannot be updated
+	 */
+	static boolean borrowBook(int bookId, String borrower) throws SQLException {
+		return await(submitLoanEvent(LoanEvent.borrowing(bookId, borrower)));
+	}
+
+	/**
+	 * Returns a borrowed book and closes its open loan.
+	 * Blocks until the group commit holding the event completes.
+	 *
+	 * @param bookId The ID of the book
+	 * @return true if the book was borrowed and is now returned
+	 * @throws SQLException if the database cannot be updated
+	 */
+	static boolean returnBook(int bookId) throws SQLException {
+		return await(submitLoanEvent(LoanEvent.returning(bookId)));
+	}
+
+	/**
+	 * Borrows a whole cart of books in one transaction. Every book is borrowed only if it is available;
+	 * the others are reported back rather than failing the cart.
+	 *
+	 * @param bookIds IDs of the books, each at most once
+	 * @param borrower Name or student ID of the borrower
+	 * @return for every book, whether it was available and is now borrowed
+	 * @throws SQLException if the database cannot be updated; then none of the books is borrowed
+	 */
+	static boolean[] borrowBooks(List<Integer> bookIds, String borrower) throws SQLException {
+		List<LoanEvent> events = new ArrayList<>(bookIds.size());
+		for (int bookId : bookIds) {
+			events.add(LoanEvent.borrowing(bookId, borrower));
+		}
+		try {
+			boolean[] borrowed = repository().applyLoanEvents(events);
+			int count = 0;
+			for (int i = 0; i < borrowed.length; i++) {
+				bookCache.invalidate(bookIds.get(i));
+				if (borrowed[i]) {
+					count++;
+				}
 			}
+			System.out.println(count + " of " + bookIds.size() + " books borrowed by " + borrower);
+			return borrowed;
 		} catch (SQLException ex) {
 			System.out.println("Error! " + ex.getMessage());
+			throw ex;
+		}
+	}
+
+	/**
+	 * Queues a borrow or return for the next group commit.
+	 *
+	 * @param event The loan event
+	 * @return future completed once the event is committed, with whether it changed the book's state
+	 */
+	static CompletableFuture<Boolean> submitLoanEvent(LoanEvent event) {
+		CompletableFuture<Boolean> committed;
+		try {
+			committed = loanWriter().submit(event);
+		} catch (SQLException ex) {
+			committed = CompletableFuture.failedFuture(ex);
 		}
+		return committed.whenComplete((changed, error) -> {
+			if (error != null) {
+				System.out.println("Error! " + error.getMessage());
+				return;
+			}
+			bookCache.invalidate(event.bookId());
+			if (event.borrow()) {
+				System.out.println(changed
+						? "Book " + event.bookId() + " borrowed by " + event.borrower()
+						: "Book " + event.bookId() + " is not available");
+			} else {
+				System.out.println(changed
+						? "Book " + event.bookId() + " returned"
+						: "Book " + event.bookId() + " is not borrowed");
+			}
+		});
+	}
+
+	private static boolean await(CompletableFuture<Boolean> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the loan to be committed", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof SQLException cause) {
+				throw cause;
+			}
+			throw new SQLException(ex.getCause().getMessage(), ex.getCause());
+		}
+	}
+
+	/**
+	 * @return group commit statistics of borrow/return events, or null before the first event
+	 */
+	static LoanEventWriter getLoanWriter() {
+		return loanWriter;
 	}
 
 	/*
 	 * USE TO VIEW DATA
 	 */
 	static void viewBookData() {
-		String query = "SELECT * FROM book_record";
-		try (PreparedStatement statement = conn.prepareStatement(query);
-			 ResultSet result = statement.executeQuery()) {
-			while (result.next()) {
-				System.out.println(result.getString("book_name") + " " + result.getInt("borrowed"));
+		try {
+			for (Book book : repository().findBooks(null)) {
+				System.out.println(book.bookName() + " " + book.borrowed());
 			}
 		} catch (SQLException ex) {
 			System.out.println("Error! " + ex.getMessage());
@@ -130,15 +489,13 @@ public class DatabaseHandler {
 	}
 
 	static void updateBookDataOnDataBase(String bookName, int isBorrowed) {
-		String query = "UPDATE book_record SET borrowed = ? WHERE book_name = ?";
 		/*
 		 * place logic to check if book is being borrowed or being returned here
 		 */
 
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			statement.setInt(1, isBorrowed);
-			statement.setString(2, bookName);
-			statement.executeUpdate();
+		try {
+			repository().updateBorrowedByName(bookName, isBorrowed);
+			bookCache.invalidateByName(bookName);
 			System.out.println("Data updated successfully!");
 		} catch (SQLException ex) {
 			System.out.println("Error! " + ex.getMessage());
@@ -152,75 +509,61 @@ public class DatabaseHandler {
 	 * @param bookName Optional filter by book name (null or empty for all books)
 	 */
 	static void findBook(String bookName) {
-		String query = buildBookQuery(bookName);
-		
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			if (bookName != null && !bookName.trim().isEmpty()) {
-				statement.setString(1, "%" + bookName.trim() + "%");
-			}
-			
-			try (ResultSet result = statement.executeQuery()) {
-				// Print table header
-				System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
-				System.out.printf("| %-8s | %-30s | %-8s |%n", "book_id", "book_name", "borrowed");
-				System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
-				
-				boolean hasResults = false;
-				while (result.next()) {
-					hasResults = true;
-					int bookId = result.getInt("book_id");
-					String name = result.getString("book_name");
-					int borrowed = result.getInt("borrowed");
-					
-					// Truncate book name if too long
-					if (name != null && name.length() > 30) {
-						name = name.substring(0, 27) + "...";
-					}
-					
-					System.out.printf("| %-8d | %-30s | %-8d |%n", bookId, name, borrowed);
-				}
-				
-				System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
-				
-				if (!hasResults) {
-					System.out.println("No books found.");
+		try {
+			List<Book> books = searchBooks(bookName);
+
+			// Print table header
+			System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
+			System.out.printf("| %-8s | %-30s | %-8s |%n", "book_id", "book_name", "borrowed");
+			System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
+
+			for (Book book : books) {
+				String name = book.bookName();
+
+				// Truncate book name if too long
+				if (name != null && name.length() > 30) {
+					name = name.substring(0, 27) + "...";
 				}
+
+				System.out.printf("| %-8d | %-30s | %-8d |%n", book.bookId(), name, book.borrowed());
+			}
+
+			System.out.println("+" + "-".repeat(10) + "+" + "-".repeat(32) + "+" + "-".repeat(10) + "+");
+
+			if (books.isEmpty()) {
+				System.out.println("No books found.");
 			}
 		} catch (SQLException ex) {
 			System.out.println("Error: " + ex.getMessage());
 		}
 	}
 	
+	/**
+	 * Returns one page of books ordered by book_id, for lazily loaded tables.
+	 *
+	 * @param bookName Optional filter by book name (null or empty for all books)
+	 * @param afterBookId Last book_id of the previous page (0 for the first page)
+	 * @param limit Page size
+	 * @return up to {@code limit} books
+	 * @throws SQLException if the page cannot be read
+	 */
+	static List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException {
+		return repository().findBookPage(bookName, afterBookId, limit);
+	}
+
 	/**
 	 * Finds and returns book data for GUI display.
 	 * Returns a 2D array with columns: book_id, book_name, borrowed
 	 * 
 	 * @param bookName Optional filter by book name (null or empty for all books)
 	 * @return Object[][] containing book data for table display
+	 * @throws SQLException if the search fails, so the caller can report it instead of showing no books
 	 */
-	static Object[][] findBookAsTableData(String bookName) {
-		String query = buildBookQuery(bookName);
-		
+	static Object[][] findBookAsTableData(String bookName) throws SQLException {
 		List<Object[]> dataList = new ArrayList<>();
-		
-		try (PreparedStatement statement = conn.prepareStatement(query)) {
-			if (bookName != null && !bookName.trim().isEmpty()) {
-				statement.setString(1, "%" + bookName.trim() + "%");
-			}
-			
-			try (ResultSet result = statement.executeQuery()) {
-				while (result.next()) {
-					Object[] row = new Object[3];
-					row[0] = result.getInt("book_id");
-					row[1] = result.getString("book_name");
-					row[2] = result.getInt("borrowed");
-					dataList.add(row);
-				}
-			}
-		} catch (SQLException ex) {
-			System.out.println("Error: " + ex.getMessage());
+		for (Book book : searchBooks(bookName)) {
+			dataList.add(book.toRow());
 		}
-		
 		return dataList.toArray(new Object[0][]);
 	}
 }
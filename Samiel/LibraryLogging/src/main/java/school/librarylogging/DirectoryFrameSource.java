@@ -0,0 +1,62 @@
+package school.librarylogging;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Replays the images of a directory (PNG, JPEG, BMP or GIF) in file name order, e.g. frames saved by a
+ * station or by {@code FrameCorpus}.
+ */
+public class DirectoryFrameSource implements FrameSource {
+
+    private final Path directory;
+    private final List<Path> files;
+    private int next;
+
+    public DirectoryFrameSource(Path directory) throws IOException {
+        this.directory = directory;
+        try (Stream<Path> entries = Files.list(directory)) {
+            this.files = entries.filter(DirectoryFrameSource::isImage).sorted().toList();
+        }
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && (name.endsWith(".png") || name.endsWith(".jpg")
+                || name.endsWith(".jpeg") || name.endsWith(".bmp") || name.endsWith(".gif"));
+    }
+
+    /**
+     * @throws IOException if a file cannot be read or is not an image
+     */
+    @Override
+    public BufferedImage next() throws IOException {
+        if (next >= files.size()) {
+            return null;
+        }
+        Path file = files.get(next++);
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("Not a readable image: " + file);
+        }
+        return image;
+    }
+
+    @Override
+    public String getName() {
+        return directory.toString();
+    }
+
+    /**
+     * @return number of images in the directory
+     */
+    public int size() {
+        return files.size();
+    }
+}
@@ -0,0 +1,749 @@
+package school.librarylogging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link BookRepository} stored in a single append-only data file, for branches without a MySQL server
+ * and as a local stand-in for load tests.
+ *
+ * Every change is appended as a record; nothing is ever rewritten in place. On open the log is replayed
+ * to build an in-memory index from book_id to the offset of that book's latest record, so a lookup is
+ * one positioned read. A torn record at the end of the file (crash during a write) is detected by its
+ * checksum and truncated. When more than half of the file is superseded records, it is compacted.
+ * Borrow and return are conditional on the current flag and run under the write lock, so two stations
+ * sharing the repository can never both borrow the same copy.
+ *
+ * File layout: header (magic, version) followed by records of
+ * {@code [int payloadLength][int crc32][byte type][int bookId][byte borrowed][UTF-8 name]}.
+ * DELETE records carry only the type and the book_id. LOAN records ({@code [type][bookId][byte action]
+ * [long epochMillis][UTF-8 borrower]}) form the loan history and survive compaction. Compaction also keeps a
+ * DELETE record for the highest book_id ever handed out when that book is gone, so a deleted book's id (and
+ * any label printed for it) is never given to a new book.
+ * IMPORT records ({@code [type][int 0][long committed][UTF-8 import key]}) hold the progress of catalog imports.
+ * A TXN record wraps several framed records under one checksum, so a borrow or return (book update plus
+ * loan record), or an import chunk with its progress, is either replayed completely or not at all.
+ */
+public class EmbeddedBookRepository implements BookRepository {
+
+    private static final int MAGIC = 0x4C544442; // "LTDB"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final byte TYPE_LOAN = 3;
+    private static final byte TYPE_TXN = 4;
+    private static final byte TYPE_IMPORT = 5;
+    private static final byte LOAN_BORROW = 1;
+    private static final byte LOAN_RETURN = 0;
+    private static final long COMPACT_MIN_FILE_SIZE = 1 << 20;
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Long> index = new TreeMap<>();
+    // Records committed by each unfinished catalog import
+    private final Map<String, Long> importProgress = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long liveBytes;
+    private int maxBookId;
+
+    // Time spent waiting for the lock, the embedded counterpart of waiting for a pooled connection
+    private final Histogram lockWaitMicros = new Histogram("us");
+
+    /**
+     * Opens the data file, creating it if missing, and rebuilds the index.
+     *
+     * @param file Path of the data file
+     * @throws SQLException if the file cannot be opened or is not a book data file
+     */
+    public EmbeddedBookRepository(Path file) throws SQLException {
+        this.file = file;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                writeFileHeader(channel);
+            }
+            replay();
+            if (channel.size() > COMPACT_MIN_FILE_SIZE && liveBytes * 2 < channel.size()) {
+                compact();
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Cannot open data file " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static void writeFileHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        target.write(header, 0);
+        target.force(true);
+    }
+
+    /**
+     * Receives each record found by {@link #scan}, including the records nested in a TXN.
+     */
+    @FunctionalInterface
+    private interface RecordVisitor {
+        /**
+         * @param payload    The record payload, positioned at the type byte
+         * @param offset     File offset of the record header
+         * @param recordSize Header plus payload length
+         */
+        void visit(ByteBuffer payload, long offset, int recordSize) throws IOException;
+    }
+
+    /**
+     * Walks the log from the start, stopping at the first incomplete or corrupt record.
+     *
+     * @return offset just past the last valid record
+     */
+    private long scan(RecordVisitor visitor) throws IOException {
+        long size = channel.size();
+        long position = FILE_HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, position);
+            recordHeader.flip();
+            int length = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            if (length < 5 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + RECORD_HEADER_SIZE);
+            payload.flip();
+            if (checksum(payload) != checksum) {
+                break;
+            }
+
+            if (payload.get(0) == TYPE_TXN) {
+                // Nested records are framed like top-level ones and start after the TXN type byte
+                int nested = 1;
+                while (nested + RECORD_HEADER_SIZE <= length) {
+                    int nestedLength = payload.getInt(nested);
+                    ByteBuffer nestedPayload = payload.duplicate()
+                            .position(nested + RECORD_HEADER_SIZE)
+                            .limit(nested + RECORD_HEADER_SIZE + nestedLength)
+                            .slice();
+                    visitor.visit(nestedPayload, position + RECORD_HEADER_SIZE + nested, RECORD_HEADER_SIZE + nestedLength);
+                    nested += RECORD_HEADER_SIZE + nestedLength;
+                }
+            } else {
+                visitor.visit(payload, position, RECORD_HEADER_SIZE + length);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Rebuilds the index by scanning the log from the start.
+     */
+    private void replay() throws IOException, SQLException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.remaining() < FILE_HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new SQLException("Not a book data file: " + file);
+        }
+
+        long size = channel.size();
+        long end = scan((payload, offset, recordSize) -> {
+            byte type = payload.get();
+            int bookId = payload.getInt();
+            maxBookId = Math.max(maxBookId, bookId);
+            if (type == TYPE_IMPORT) {
+                long committed = payload.getLong();
+                String importKey = StandardCharsets.UTF_8.decode(payload).toString();
+                if (committed > 0) {
+                    importProgress.put(importKey, committed);
+                } else {
+                    importProgress.remove(importKey);
+                }
+                return;
+            }
+            if (type == TYPE_LOAN) {
+                liveBytes += recordSize;
+                return;
+            }
+            Long previous = type == TYPE_PUT
+                    ? index.put(bookId, offset)
+                    : index.remove(bookId);
+            if (previous != null) {
+                liveBytes -= recordSize(previous);
+            }
+            if (type == TYPE_PUT) {
+                liveBytes += recordSize;
+            }
+        });
+
+        if (end < size) {
+            System.out.println("Discarding " + (size - end) + " trailing bytes of incomplete data in " + file);
+            channel.truncate(end);
+        }
+    }
+
+    private long recordSize(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        return RECORD_HEADER_SIZE + length.flip().getInt();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+    }
+
+    private int checksum(ByteBuffer payload) {
+        synchronized (crc) {
+            crc.reset();
+            crc.update(payload.duplicate());
+            return (int) crc.getValue();
+        }
+    }
+
+    private ByteBuffer encodePut(int bookId, String bookName, int borrowed) {
+        byte[] name = bookName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(6 + name.length);
+        payload.put(TYPE_PUT).putInt(bookId).put((byte) borrowed).put(name).flip();
+        return frame(payload);
+    }
+
+    private ByteBuffer encodeDelete(int bookId) {
+        ByteBuffer payload = ByteBuffer.allocate(5);
+        payload.put(TYPE_DELETE).putInt(bookId).flip();
+        return frame(payload);
+    }
+
+    private ByteBuffer encodeLoan(int bookId, byte action, String borrower) {
+        byte[] name = (borrower == null ? "" : borrower).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(14 + name.length);
+        payload.put(TYPE_LOAN).putInt(bookId).put(action).putLong(System.currentTimeMillis()).put(name).flip();
+        return frame(payload);
+    }
+
+    private ByteBuffer encodeImport(String importKey, long committed) {
+        byte[] key = importKey.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(13 + key.length);
+        payload.put(TYPE_IMPORT).putInt(0).putLong(committed).put(key).flip();
+        return frame(payload);
+    }
+
+    /**
+     * Wraps framed records into one TXN record with a single checksum.
+     */
+    private ByteBuffer encodeTxn(ByteBuffer... records) {
+        int length = 1;
+        for (ByteBuffer record : records) {
+            length += record.remaining();
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(TYPE_TXN);
+        for (ByteBuffer record : records) {
+            payload.put(record.duplicate());
+        }
+        return frame(payload.flip());
+    }
+
+    private ByteBuffer frame(ByteBuffer payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.remaining());
+        record.putInt(payload.remaining()).putInt(checksum(payload)).put(payload).flip();
+        return record;
+    }
+
+    /**
+     * Appends records at the end of the log and forces them to disk. Caller holds the write lock.
+     * If the write fails part-way (e.g. disk full), the partial bytes are cut off again: left in place,
+     * they would end the replay at the next open and every record appended after them would be lost.
+     *
+     * @return offset of the first appended record
+     */
+    private long append(ByteBuffer... records) throws IOException {
+        long start = channel.size();
+        long position = start;
+        try {
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            try {
+                channel.truncate(start);
+            } catch (IOException truncateFailure) {
+                ex.addSuppressed(truncateFailure);
+            }
+            throw ex;
+        }
+        return start;
+    }
+
+    private Book readBook(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(header, offset);
+        int length = header.flip().getInt();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + RECORD_HEADER_SIZE);
+        payload.flip();
+        payload.get(); // type, always PUT for indexed records
+        int bookId = payload.getInt();
+        int borrowed = payload.get();
+        String name = StandardCharsets.UTF_8.decode(payload).toString();
+        return new Book(bookId, name, borrowed);
+    }
+
+    private void put(Book book) throws IOException {
+        ByteBuffer record = encodePut(book.bookId(), book.bookName(), book.borrowed());
+        int size = record.remaining();
+        long offset = append(record);
+        Long previous = index.put(book.bookId(), offset);
+        if (previous != null) {
+            liveBytes -= recordSize(previous);
+        }
+        liveBytes += size;
+    }
+
+    private void lockRead() {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        lockWaitMicros.record((System.nanoTime() - start) / 1000);
+    }
+
+    private void lockWrite() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        lockWaitMicros.record((System.nanoTime() - start) / 1000);
+    }
+
+    private static SQLException wrap(IOException ex) {
+        return new SQLException("Data file error: " + ex.getMessage(), ex);
+    }
+
+    @Override
+    public int addBook(String bookName, int borrowed) throws SQLException {
+        lockWrite();
+        try {
+            int bookId = maxBookId + 1;
+            put(new Book(bookId, bookName, borrowed));
+            maxBookId = bookId;
+            return bookId;
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the whole chunk with a single write and a single force.
+     */
+    @Override
+    public void addBooks(List<Book> books) throws SQLException {
+        if (books.isEmpty()) {
+            return;
+        }
+        lockWrite();
+        try {
+            appendBooks(books, null);
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the chunk and the import's progress as one TXN record.
+     */
+    @Override
+    public void addBooks(List<Book> books, String importKey, long committed) throws SQLException {
+        lockWrite();
+        try {
+            appendBooks(books, encodeImport(importKey, committed));
+            importProgress.put(importKey, committed);
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends PUT records for new books, wrapped in a TXN with {@code trailer} if there is one. Caller holds
+     * the write lock.
+     */
+    private void appendBooks(List<Book> books, ByteBuffer trailer) throws IOException {
+        ByteBuffer[] records = new ByteBuffer[books.size() + (trailer != null ? 1 : 0)];
+        int[] sizes = new int[books.size()];
+        int nextId = maxBookId;
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            records[i] = encodePut(++nextId, book.bookName(), book.borrowed());
+            sizes[i] = records[i].remaining();
+        }
+        long offset;
+        if (trailer != null) {
+            records[books.size()] = trailer;
+            // Nested records start after the TXN header and type byte
+            offset = append(encodeTxn(records)) + RECORD_HEADER_SIZE + 1;
+        } else {
+            offset = append(records);
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            index.put(maxBookId + 1 + i, offset);
+            offset += sizes[i];
+            liveBytes += sizes[i];
+        }
+        maxBookId = nextId;
+    }
+
+    @Override
+    public long getImportProgress(String importKey) {
+        lockRead();
+        try {
+            return importProgress.getOrDefault(importKey, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clearImportProgress(String importKey) throws SQLException {
+        lockWrite();
+        try {
+            if (importProgress.remove(importKey) != null) {
+                append(encodeImport(importKey, 0));
+            }
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean removeBook(int bookId) throws SQLException {
+        lockWrite();
+        try {
+            Long offset = index.get(bookId);
+            if (offset == null) {
+                return false;
+            }
+            long size = recordSize(offset);
+            append(encodeDelete(bookId));
+            index.remove(bookId);
+            liveBytes -= size;
+            return true;
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateBook(int bookId, String newBookName, int borrowed) throws SQLException {
+        lockWrite();
+        try {
+            Long offset = index.get(bookId);
+            if (offset == null) {
+                return false;
+            }
+            String name = newBookName != null && !newBookName.trim().isEmpty()
+                    ? newBookName.trim()
+                    : readBook(offset).bookName();
+            put(new Book(bookId, name, borrowed));
+            return true;
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int updateBorrowedByName(String bookName, int borrowed) throws SQLException {
+        lockWrite();
+        try {
+            List<Book> matches = new ArrayList<>();
+            for (long offset : index.values()) {
+                Book book = readBook(offset);
+                // MySQL's default collation compares case-insensitively, match that here
+                if (book.bookName().equalsIgnoreCase(bookName)) {
+                    matches.add(book);
+                }
+            }
+            for (Book book : matches) {
+                put(new Book(book.bookId(), book.bookName(), borrowed));
+            }
+            return matches.size();
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> findBooks(String bookName) throws SQLException {
+        String filter = bookName == null || bookName.trim().isEmpty()
+                ? null
+                : bookName.trim().toLowerCase(Locale.ROOT);
+        List<Book> books = new ArrayList<>();
+        lockRead();
+        try {
+            for (long offset : index.values()) {
+                Book book = readBook(offset);
+                if (filter == null || book.bookName().toLowerCase(Locale.ROOT).contains(filter)) {
+                    books.add(book);
+                }
+            }
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> findBooksByIds(List<Integer> bookIds) throws SQLException {
+        List<Book> books = new ArrayList<>(bookIds.size());
+        lockRead();
+        try {
+            for (int bookId : bookIds) {
+                Long offset = index.get(bookId);
+                if (offset != null) {
+                    books.add(readBook(offset));
+                }
+            }
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException {
+        String filter = bookName == null || bookName.trim().isEmpty()
+                ? null
+                : bookName.trim().toLowerCase(Locale.ROOT);
+        List<Book> books = new ArrayList<>(limit);
+        lockRead();
+        try {
+            for (long offset : index.tailMap(afterBookId, false).values()) {
+                if (books.size() >= limit) {
+                    break;
+                }
+                Book book = readBook(offset);
+                if (filter == null || book.bookName().toLowerCase(Locale.ROOT).contains(filter)) {
+                    books.add(book);
+                }
+            }
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return books;
+    }
+
+    @Override
+    public boolean borrowBook(int bookId, String borrower) throws SQLException {
+        return applyLoanEvents(List.of(LoanEvent.borrowing(bookId, borrower)))[0];
+    }
+
+    @Override
+    public boolean returnBook(int bookId) throws SQLException {
+        return applyLoanEvents(List.of(LoanEvent.returning(bookId)))[0];
+    }
+
+    /**
+     * Flips the borrowed flag of every event whose book currently has the opposite value, and records
+     * the loan events, all in one TXN record written with a single force.
+     */
+    @Override
+    public boolean[] applyLoanEvents(List<LoanEvent> events) throws SQLException {
+        boolean[] applied = new boolean[events.size()];
+        lockWrite();
+        try {
+            // State of books already changed earlier in this batch
+            Map<Integer, Book> changed = new HashMap<>();
+            List<ByteBuffer> records = new ArrayList<>();
+            for (int i = 0; i < applied.length; i++) {
+                LoanEvent event = events.get(i);
+                Book book = changed.get(event.bookId());
+                if (book == null) {
+                    Long offset = index.get(event.bookId());
+                    if (offset == null) {
+                        continue;
+                    }
+                    book = readBook(offset);
+                }
+                byte action = event.borrow() ? LOAN_BORROW : LOAN_RETURN;
+                if (book.borrowed() == action) {
+                    continue;
+                }
+                changed.put(book.bookId(), new Book(book.bookId(), book.bookName(), action));
+                records.add(encodePut(book.bookId(), book.bookName(), action));
+                records.add(encodeLoan(book.bookId(), action, event.borrower()));
+                applied[i] = true;
+            }
+            if (records.isEmpty()) {
+                return applied;
+            }
+
+            long txnOffset = append(encodeTxn(records.toArray(new ByteBuffer[0])));
+            // Nested records start after the TXN header and type byte, in pairs of PUT then LOAN
+            long position = txnOffset + RECORD_HEADER_SIZE + 1;
+            for (int i = 0; i < records.size(); i += 2) {
+                int putSize = records.get(i).limit();
+                int loanSize = records.get(i + 1).limit();
+                int bookId = records.get(i).getInt(RECORD_HEADER_SIZE + 1);
+                Long previous = index.put(bookId, position);
+                liveBytes += putSize + loanSize - recordSize(previous);
+                position += putSize + loanSize;
+            }
+            return applied;
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the data file keeping only the latest record of every live book, the loan history and the
+     * progress of unfinished imports.
+     * The new file replaces the old one atomically, so a crash leaves one of the two intact.
+     *
+     * @throws SQLException if the file cannot be rewritten
+     */
+    public void compact() throws SQLException {
+        lockWrite();
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try {
+            TreeMap<Integer, Long> newIndex = new TreeMap<>();
+            long newLiveBytes = 0;
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFileHeader(target);
+                long position = FILE_HEADER_SIZE;
+                for (Map.Entry<Integer, Long> entry : index.entrySet()) {
+                    Book book = readBook(entry.getValue());
+                    ByteBuffer record = encodePut(book.bookId(), book.bookName(), book.borrowed());
+                    newIndex.put(book.bookId(), position);
+                    newLiveBytes += record.remaining();
+                    while (record.hasRemaining()) {
+                        position += target.write(record, position);
+                    }
+                }
+                // Loan history is never superseded: copy every loan record over in log order
+                long[] loanPosition = {position};
+                long[] loanBytes = {0};
+                scan((payload, offset, recordSize) -> {
+                    if (payload.get(0) == TYPE_LOAN) {
+                        ByteBuffer record = frame(payload.duplicate());
+                        loanBytes[0] += record.remaining();
+                        while (record.hasRemaining()) {
+                            loanPosition[0] += target.write(record, loanPosition[0]);
+                        }
+                    }
+                });
+                newLiveBytes += loanBytes[0];
+                for (Map.Entry<String, Long> progress : importProgress.entrySet()) {
+                    ByteBuffer record = encodeImport(progress.getKey(), progress.getValue());
+                    newLiveBytes += record.remaining();
+                    while (record.hasRemaining()) {
+                        loanPosition[0] += target.write(record, loanPosition[0]);
+                    }
+                }
+                if (maxBookId > 0 && (newIndex.isEmpty() || newIndex.lastKey() < maxBookId)) {
+                    // The highest book was deleted: keep a tombstone so replay does not hand its id out again
+                    ByteBuffer tombstone = encodeDelete(maxBookId);
+                    newLiveBytes += tombstone.remaining();
+                    while (tombstone.hasRemaining()) {
+                        loanPosition[0] += target.write(tombstone, loanPosition[0]);
+                    }
+                }
+                target.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                // The original file is still in place: keep serving from it
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            index.putAll(newIndex);
+            liveBytes = newLiveBytes;
+        } catch (IOException ex) {
+            throw wrap(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String describe() {
+        lockRead();
+        try {
+            return "Embedded (" + file.toAbsolutePath() + ", " + index.size() + " books)";
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return distribution of the time operations waited for the store lock, in microseconds
+     */
+    public Histogram getLockWaitTime() {
+        return lockWaitMicros;
+    }
+
+    @Override
+    public void close() {
+        lockWrite();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.out.println("Error! " + ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package school.librarylogging;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where a {@link ScanEngine} takes its frames from: a camera, or a recording replayed as fast as it decodes.
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /**
+     * @return the next frame, or null once the source is exhausted or closed; may block until one arrives
+     * @throws IOException if a frame cannot be read
+     */
+    BufferedImage next() throws IOException, InterruptedException;
+
+    /**
+     * @return a name for logs and statistics
+     */
+    String getName();
+
+    /**
+     * Live sources deliver frames in real time whether they are decoded or not, so stale frames may be
+     * skipped; recorded sources wait for every frame to be decoded.
+     */
+    default boolean isLive() {
+        return false;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Opens a recording: a directory of images ({@link DirectoryFrameSource}) or a Motion JPEG file
+     * ({@link MjpegFrameSource}).
+     */
+    static FrameSource open(Path path) throws IOException {
+        return Files.isDirectory(path) ? new DirectoryFrameSource(path) : new MjpegFrameSource(path);
+    }
+}
@@ -0,0 +1,151 @@
+package school.librarylogging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values in log-linear buckets, as HdrHistogram keeps them.
+ *
+ * Every power of two is split into 16 equal sub-buckets, so values below 32 are counted exactly and larger
+ * ones to within 1/16 (6.25%). Percentiles are reported as the upper bound of the bucket they fall in, which
+ * tells a 1.0 ms commit from a 1.2 ms one without storing every sample, in under 8 KB.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Values up to Long.MAX_VALUE have their top bit at position 62
+    private static final int BUCKETS = (62 - SUB_BITS + 2) * SUB_COUNT;
+
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param unit Unit appended to values in {@link #toString()}, for example "us"
+     */
+    public Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * @return largest value counted in the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return upper bound of the bucket holding the given percentile, capped at the maximum seen
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a copy of the values recorded so far; recording continues in this histogram
+     */
+    public Histogram snapshot() {
+        Histogram copy = new Histogram(unit);
+        for (int i = 0; i < BUCKETS; i++) {
+            copy.buckets.set(i, buckets.get(i));
+        }
+        copy.count.set(count.get());
+        copy.sum.set(sum.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+    /**
+     * The values recorded since an earlier {@link #snapshot()}, for reporting an interval. Its maximum is the
+     * upper bound of the highest bucket that grew.
+     *
+     * @param earlier A snapshot of this histogram
+     * @return a new histogram of the difference
+     */
+    public Histogram since(Histogram earlier) {
+        Histogram interval = new Histogram(unit);
+        long highest = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long added = buckets.get(i) - earlier.buckets.get(i);
+            if (added > 0) {
+                interval.buckets.set(i, added);
+                highest = upperBoundOf(i);
+            }
+        }
+        interval.count.set(Math.max(0, count.get() - earlier.count.get()));
+        interval.sum.set(Math.max(0, sum.get() - earlier.sum.get()));
+        interval.max.set(Math.min(highest, max.get()));
+        return interval;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1f%s, p50=%d%s, p99=%d%s, max=%d%s",
+                getCount(), getMean(), unit, getPercentile(50), unit, getPercentile(99), unit, getMax(), unit);
+    }
+}
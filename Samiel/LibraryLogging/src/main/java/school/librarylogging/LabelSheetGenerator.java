@@ -0,0 +1,236 @@
+package school.librarylogging;
+
+import com.google.zxing.WriterException;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Prints QR labels for a whole catalog onto multi-up label sheets, one PNG per page.
+ *
+ * Books are read one sheet at a time in book_id order, so the catalog is never held in memory. Each sheet is
+ * rendered on a fork-join pool: the QR images of its labels in parallel, bypassing the shared QR image cache,
+ * then composed and written. At most {@code parallelism + 1} sheets are in flight, which bounds memory to a
+ * few 1-bit sheet images whatever the size of the catalog.
+ *
+ * The default layout is A4 at 300 dpi with 4 x 6 labels.
+ */
+public class LabelSheetGenerator {
+
+    public static final int DEFAULT_SHEET_WIDTH = 2480;
+    public static final int DEFAULT_SHEET_HEIGHT = 3508;
+    public static final int DEFAULT_COLUMNS = 4;
+    public static final int DEFAULT_ROWS = 6;
+
+    private static final int MARGIN = 90;
+    private static final int CAPTION_HEIGHT = 70;
+    private static final int FONT_SIZE = 28;
+    private static final BasicStroke DASHED = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[]{8, 8}, 0);
+
+    /**
+     * Receives progress after every written sheet.
+     */
+    public interface ProgressListener {
+        /**
+         * @param labels          Labels written so far
+         * @param sheets          Sheets written so far
+         * @param labelsPerSecond Throughput so far
+         */
+        void onProgress(long labels, long sheets, double labelsPerSecond);
+    }
+
+    /**
+     * Outcome of a run.
+     *
+     * @param labels        Labels printed
+     * @param sheets        Sheet files written
+     * @param elapsedMillis Duration of the run
+     */
+    public record Result(long labels, long sheets, long elapsedMillis) {
+        public double labelsPerSecond() {
+            return elapsedMillis == 0 ? labels : labels * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final QrCode qrCode;
+    private final int sheetWidth;
+    private final int sheetHeight;
+    private final int columns;
+    private final int rows;
+    private final int parallelism;
+    private final ProgressListener listener;
+
+    public LabelSheetGenerator(QrCode qrCode, ProgressListener listener) {
+        this(qrCode, DEFAULT_SHEET_WIDTH, DEFAULT_SHEET_HEIGHT, DEFAULT_COLUMNS, DEFAULT_ROWS,
+                Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    /**
+     * @param sheetWidth  Width of a sheet in pixels
+     * @param sheetHeight Height of a sheet in pixels
+     * @param columns     Labels across a sheet
+     * @param rows        Labels down a sheet
+     * @param parallelism Threads of the rendering pool
+     * @param listener    Receives progress (may be null)
+     */
+    public LabelSheetGenerator(QrCode qrCode, int sheetWidth, int sheetHeight, int columns, int rows,
+                               int parallelism, ProgressListener listener) {
+        if (columns <= 0 || rows <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid layout: " + columns + "x" + rows + " on " + parallelism + " threads");
+        }
+        if (cellSize(sheetWidth - 2 * MARGIN, columns, sheetHeight - 2 * MARGIN, rows) < 50) {
+            throw new IllegalArgumentException("Labels of a " + columns + "x" + rows + " sheet are too small to scan");
+        }
+        this.qrCode = qrCode;
+        this.sheetWidth = sheetWidth;
+        this.sheetHeight = sheetHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.parallelism = parallelism;
+        this.listener = listener;
+    }
+
+    /**
+     * Writes label sheets for every book the source supplies to {@code labels-0001.png}, {@code labels-0002.png}, ...
+     *
+     * @param pages     Supplies the catalog a page at a time in book_id order; asked for one sheet of books per call
+     * @param directory Directory for the sheets, created if missing
+     * @return run statistics
+     * @throws IOException if a sheet cannot be written
+     * @throws Exception   if the page source fails; sheets already written are kept
+     */
+    public Result generate(TitleSearchIndex.PageSource pages, Path directory) throws Exception {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        int perSheet = columns * rows;
+        AtomicLong labels = new AtomicLong();
+        AtomicLong sheets = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Semaphore inFlight = new Semaphore(parallelism + 1);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            int afterBookId = 0;
+            int sheetNumber = 0;
+            List<Book> page;
+            while (failure.get() == null && !(page = pages.next(afterBookId)).isEmpty()) {
+                // Read ahead only as far as the pool can keep up with
+                inFlight.acquire();
+                List<Book> books = page.size() > perSheet ? page.subList(0, perSheet) : page;
+                Path file = directory.resolve(String.format("labels-%04d.png", ++sheetNumber));
+                pending.add(pool.submit(() -> {
+                    try {
+                        writeSheet(books, file);
+                        long written = labels.addAndGet(books.size());
+                        long sheetCount = sheets.incrementAndGet();
+                        if (listener != null) {
+                            listener.onProgress(written, sheetCount, written * 1e9 / (System.nanoTime() - start));
+                        }
+                    } catch (Exception ex) {
+                        failure.compareAndSet(null, ex);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+                pending.removeIf(Future::isDone);
+                afterBookId = books.get(books.size() - 1).bookId();
+            }
+            for (Future<?> sheet : pending) {
+                sheet.get();
+            }
+        } catch (ExecutionException ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return new Result(labels.get(), sheets.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Renders the QR images of one sheet in parallel, then composes and writes the sheet. Runs in the pool.
+     */
+    private void writeSheet(List<Book> books, Path file) throws IOException {
+        int cellWidth = (sheetWidth - 2 * MARGIN) / columns;
+        int cellHeight = (sheetHeight - 2 * MARGIN) / rows;
+        int qrSize = cellSize(sheetWidth - 2 * MARGIN, columns, sheetHeight - 2 * MARGIN, rows);
+
+        List<ForkJoinTask<BufferedImage>> codes = new ArrayList<>(books.size());
+        for (Book book : books) {
+            codes.add(ForkJoinTask.adapt(() -> {
+                try {
+                    return QrCode.renderUncached(QrCode.bookPayload(book), qrSize);
+                } catch (WriterException ex) {
+                    throw new IllegalStateException("Cannot encode book " + book.bookId() + ": " + ex.getMessage(), ex);
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(codes);
+
+        // Labels are printed black on white: a 1-bit sheet is an eighth of the memory and much faster to encode
+        BufferedImage sheet = new BufferedImage(sheetWidth, sheetHeight, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = sheet.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, sheetWidth, sheetHeight);
+            g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE));
+            FontMetrics metrics = g.getFontMetrics();
+            for (int i = 0; i < books.size(); i++) {
+                int left = MARGIN + (i % columns) * cellWidth;
+                int top = MARGIN + (i / columns) * cellHeight;
+                g.drawImage(codes.get(i).join(), left + (cellWidth - qrSize) / 2, top, null);
+
+                // Cut guides and a caption a person can read
+                g.setColor(Color.BLACK);
+                g.setStroke(DASHED);
+                g.drawRect(left, top, cellWidth - 1, cellHeight - 1);
+                String caption = caption(books.get(i), metrics, cellWidth - 20);
+                g.drawString(caption, left + (cellWidth - metrics.stringWidth(caption)) / 2,
+                        top + qrSize + (CAPTION_HEIGHT + metrics.getAscent()) / 2);
+            }
+        } finally {
+            g.dispose();
+        }
+        // Streamed as 1-bit PNG, straight from the raster
+        qrCode.saveQrImage(sheet, file);
+    }
+
+    private static int cellSize(int width, int columns, int height, int rows) {
+        return Math.min(width / columns, height / rows - CAPTION_HEIGHT);
+    }
+
+    private static String caption(Book book, FontMetrics metrics, int maxWidth) {
+        String caption = book.bookId() + " - " + book.bookName();
+        if (metrics.stringWidth(caption) <= maxWidth) {
+            return caption;
+        }
+        while (caption.length() > 1 && metrics.stringWidth(caption + "...") > maxWidth) {
+            caption = caption.substring(0, caption.length() - 1);
+        }
+        return caption + "...";
+    }
+
+    public int getLabelsPerSheet() {
+        return columns * rows;
+    }
+}
@@ -0,0 +1,253 @@
+package school.librarylogging;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Table model over book_record that loads pages on demand as the table is scrolled.
+ *
+ * Pages are fetched with keyset pagination ({@code book_id > ?}) and only the most recently used
+ * pages are kept in memory. For every page seen so far the model remembers the last book_id of the
+ * page before it, so an evicted page can be fetched again. Memory use is therefore a fixed number of
+ * pages plus one int per page, regardless of catalog size.
+ *
+ * The row count grows as the user scrolls towards the end of what has been loaded.
+ * Pages are fetched through {@link AsyncDatabase}, never on the event dispatch thread: rows of a page
+ * still in flight read as null and are repainted once it arrives. All other methods must be called on
+ * the EDT.
+ */
+public class LazyBookTableModel extends AbstractTableModel {
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_CACHED_PAGES = 10;
+
+    private static final String[] COLUMNS = {"book_id", "book_name", "borrowed"};
+    // Marks the "next page" fetch in the in-flight map
+    private static final int NEXT_PAGE = -1;
+
+    private final String bookName;
+    private final int pageSize;
+    private final Map<Integer, List<Book>> pages;
+    private final Map<Integer, CompletableFuture<List<Book>>> inFlight = new HashMap<>();
+
+    // pageAfterKeys[i] is the last book_id of page i - 1 (0 for the first page)
+    private int[] pageAfterKeys = new int[16];
+    private int knownPages;
+    private int rowCount;
+    private boolean exhausted;
+    private int generation;
+    private Consumer<Boolean> loadingListener;
+
+    public LazyBookTableModel(String bookName) {
+        this(bookName, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    public LazyBookTableModel(String bookName, int pageSize, int cachedPages) {
+        this.bookName = bookName;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<>(cachedPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Book>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /**
+     * @param listener Told on the EDT whenever the model starts (true) or stops (false) fetching pages
+     */
+    public void setLoadingListener(Consumer<Boolean> listener) {
+        this.loadingListener = listener;
+    }
+
+    public boolean isLoading() {
+        return !inFlight.isEmpty();
+    }
+
+    /**
+     * Drops everything loaded so far and loads the first page again.
+     *
+     * @return future completed on the EDT once the first page is shown, or failed if it cannot be read
+     */
+    public CompletableFuture<Void> refresh() {
+        cancelPending();
+        pages.clear();
+        Arrays.fill(pageAfterKeys, 0);
+        knownPages = 0;
+        rowCount = 0;
+        exhausted = false;
+        fireTableDataChanged();
+
+        return fetch(NEXT_PAGE, 0).thenAccept(page -> {
+            if (page != null) {
+                appendPage(page);
+                fireTableDataChanged();
+            }
+        });
+    }
+
+    /**
+     * Cancels every page fetch still in flight, for example when the table is closed.
+     */
+    public void cancelPending() {
+        boolean wasLoading = isLoading();
+        // Results of anything still running are ignored from now on
+        generation++;
+        inFlight.values().forEach(future -> future.cancel(true));
+        inFlight.clear();
+        if (wasLoading) {
+            notifyLoading(false);
+        }
+    }
+
+    /**
+     * Fetches a page in the background.
+     *
+     * @return future completed on the EDT with the page, or with null if the model was refreshed meanwhile
+     */
+    private CompletableFuture<List<Book>> fetch(int key, int afterBookId) {
+        int requestGeneration = generation;
+        CompletableFuture<List<Book>> request = AsyncDatabase.supply(
+                () -> DatabaseHandler.findBookPage(bookName, afterBookId, pageSize));
+        if (inFlight.isEmpty()) {
+            notifyLoading(true);
+        }
+        inFlight.put(key, request);
+
+        return request.handleAsync((page, error) -> {
+            if (requestGeneration != generation) {
+                return null;
+            }
+            if (inFlight.remove(key) != null && inFlight.isEmpty()) {
+                notifyLoading(false);
+            }
+            if (error != null) {
+                System.out.println("Error: " + error.getMessage());
+                throw new IllegalStateException("Failed to load books: " + error.getMessage(), error);
+            }
+            return page;
+        }, AsyncDatabase.EDT);
+    }
+
+    private void notifyLoading(boolean loading) {
+        if (loadingListener != null) {
+            loadingListener.accept(loading);
+        }
+    }
+
+    /**
+     * Registers a freshly fetched page at the end of the known rows.
+     */
+    private void appendPage(List<Book> page) {
+        int pageIndex = knownPages++;
+        pages.put(pageIndex, page);
+        rowCount += page.size();
+        if (page.size() < pageSize) {
+            exhausted = true;
+        } else {
+            if (knownPages == pageAfterKeys.length) {
+                pageAfterKeys = Arrays.copyOf(pageAfterKeys, knownPages * 2);
+            }
+            pageAfterKeys[knownPages] = page.get(page.size() - 1).bookId();
+        }
+    }
+
+    private void loadNextPage() {
+        if (exhausted || inFlight.containsKey(NEXT_PAGE)) {
+            return;
+        }
+        fetch(NEXT_PAGE, pageAfterKeys[knownPages]).thenAccept(page -> {
+            if (page == null) {
+                return;
+            }
+            int firstRow = rowCount;
+            appendPage(page);
+            if (rowCount > firstRow) {
+                fireTableRowsInserted(firstRow, rowCount - 1);
+            }
+        });
+    }
+
+    /**
+     * @return the page if it is in memory; otherwise starts fetching it and returns null
+     */
+    private List<Book> page(int pageIndex) {
+        List<Book> page = pages.get(pageIndex);
+        if (page == null && !inFlight.containsKey(pageIndex)) {
+            fetch(pageIndex, pageAfterKeys[pageIndex]).thenAccept(fetched -> {
+                if (fetched != null) {
+                    pages.put(pageIndex, fetched);
+                    int firstRow = pageIndex * pageSize;
+                    fireTableRowsUpdated(firstRow, Math.min(firstRow + pageSize, rowCount) - 1);
+                }
+            });
+        }
+        return page;
+    }
+
+    /**
+     * @return the book at the given row, or null if its page is still loading or it is no longer available
+     */
+    public Book getBookAt(int row) {
+        int pageIndex = row / pageSize;
+        if (pageIndex == knownPages - 1 && !exhausted) {
+            // The table has reached the last loaded page: fetch the next one
+            loadNextPage();
+        }
+        List<Book> page = page(pageIndex);
+        int offset = row % pageSize;
+        // A page fetched again after concurrent deletes can be shorter than before
+        return page != null && offset < page.size() ? page.get(offset) : null;
+    }
+
+    /**
+     * @return number of pages currently held in memory
+     */
+    public int getCachedPageCount() {
+        return pages.size();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 1 ? String.class : Integer.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Book book = getBookAt(row);
+        if (book == null) {
+            return null;
+        }
+        return switch (column) {
+            case 0 -> book.bookId();
+            case 1 -> book.bookName();
+            default -> book.borrowed();
+        };
+    }
+}
@@ -0,0 +1,19 @@
+package school.librarylogging;
+
+/**
+ * A borrow or a return of one book, as queued by {@link LoanEventWriter}.
+ *
+ * @param bookId   The ID of the book
+ * @param borrower Name or student ID of the borrower (null for returns)
+ * @param borrow   true to borrow the book, false to return it
+ */
+public record LoanEvent(int bookId, String borrower, boolean borrow) {
+
+    public static LoanEvent borrowing(int bookId, String borrower) {
+        return new LoanEvent(bookId, borrower, true);
+    }
+
+    public static LoanEvent returning(int bookId) {
+        return new LoanEvent(bookId, null, false);
+    }
+}
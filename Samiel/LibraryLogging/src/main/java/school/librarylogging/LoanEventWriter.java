@@ -0,0 +1,264 @@
+package school.librarylogging;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Group-commit writer for borrow and return events.
+ *
+ * Scanning stations hand events over through a lock-free queue. A single flusher thread waits until the
+ * oldest queued event is {@code maxDelay} old or {@code maxBatch} events are queued, then applies them all
+ * with one {@link BookRepository#applyLoanEvents} call, so a queue of students at the desk costs one commit
+ * (one fsync) per batch instead of one per scan. Each caller's future completes once its batch commits,
+ * with whether its event changed the book's state. A batch the database rejects because of one event's data
+ * is retried in halves, so only that event's future fails; any other failure fails the whole batch.
+ */
+public class LoanEventWriter implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_DELAY_MS = 5;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private final BookRepository repository;
+    private final long maxDelayNanos;
+    private final int maxBatch;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final Histogram batchSizes = new Histogram("");
+    private final Histogram commitMicros = new Histogram("us");
+
+    /**
+     * @param repository  Repository the batches are written to
+     * @param maxDelayMs  Longest time an event waits for others to join its batch, 0 to flush as soon as possible
+     * @param maxBatch    Batch size that triggers a flush without waiting
+     */
+    public LoanEventWriter(BookRepository repository, long maxDelayMs, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.repository = repository;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.maxBatch = maxBatch;
+        this.flusher = new Thread(this::run, "loan-event-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private record Pending(LoanEvent event, long enqueuedAt, CompletableFuture<Boolean> future) {
+    }
+
+    BookRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Queues an event for the next batch.
+     *
+     * @return future completed with true if the event changed the book's state, false if the book was
+     *         already in that state or does not exist; failed if the event could not be committed
+     */
+    public CompletableFuture<Boolean> submit(LoanEvent event) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new SQLException("Loan event writer is closed"));
+        }
+        Pending pending = new Pending(event, System.nanoTime(), new CompletableFuture<>());
+        queue.add(pending);
+        int size = queued.incrementAndGet();
+        if (size == 1 || size >= maxBatch) {
+            LockSupport.unpark(flusher);
+        }
+        if (closed) {
+            // Raced with close(): make sure nothing is left waiting forever
+            failQueued();
+        }
+        return pending.future();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            Pending first = queue.peek();
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            // Give other stations until the oldest event's deadline to join the batch
+            long deadline = first.enqueuedAt() + maxDelayNanos;
+            long remaining;
+            while (!closed && queued.get() < maxBatch && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            Pending next;
+            while (batch.size() < maxBatch && (next = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(next);
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commits the batch. If the database rejects the data of an event (e.g. a borrower name too long for its
+     * column), the halves are committed separately, down to single events, so the bad event fails alone.
+     * Any other failure, such as no connection, fails the whole batch at once.
+     */
+    private void flush(List<Pending> batch) {
+        Exception failure = commit(batch);
+        if (failure == null) {
+            return;
+        }
+        failedBatches.incrementAndGet();
+        if (batch.size() > 1 && isEventError(failure)) {
+            isolate(batch);
+        } else {
+            fail(batch, failure);
+        }
+    }
+
+    /**
+     * Commits the two halves of a batch that failed on an event's data, splitting again whichever half fails
+     * the same way.
+     */
+    private void isolate(List<Pending> batch) {
+        int half = batch.size() / 2;
+        for (List<Pending> part : List.of(batch.subList(0, half), batch.subList(half, batch.size()))) {
+            Exception failure = commit(part);
+            if (failure == null) {
+                continue;
+            }
+            if (part.size() > 1 && isEventError(failure)) {
+                isolate(part);
+            } else {
+                fail(part, failure);
+            }
+        }
+    }
+
+    /**
+     * @return null once the events are committed and their futures completed, otherwise why the commit failed
+     */
+    private Exception commit(List<Pending> batch) {
+        List<LoanEvent> batchEvents = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            batchEvents.add(pending.event());
+        }
+        long start = System.nanoTime();
+        try {
+            boolean[] applied = repository.applyLoanEvents(batchEvents);
+            commitMicros.record((System.nanoTime() - start) / 1000);
+            batchSizes.record(batch.size());
+            batches.incrementAndGet();
+            events.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(applied[i]);
+            }
+            return null;
+        } catch (SQLException | RuntimeException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * @return true if the database rejected the data of some event (SQLState class 22, data exception, or 23,
+     *         integrity constraint violation), rather than failing for every event alike
+     */
+    private static boolean isEventError(Exception ex) {
+        if (!(ex instanceof SQLException sqlException)) {
+            return false;
+        }
+        String state = sqlException.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private void fail(List<Pending> batch, Exception ex) {
+        if (batch.size() == 1) {
+            int bookId = batch.get(0).event().bookId();
+            System.out.println("Error! Loan event for book " + bookId + " failed: " + ex.getMessage());
+        } else {
+            System.out.println("Error! Loan batch of " + batch.size() + " events failed: " + ex.getMessage());
+        }
+        for (Pending pending : batch) {
+            pending.future().completeExceptionally(ex);
+        }
+    }
+
+    private void failQueued() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            queued.decrementAndGet();
+            pending.future().completeExceptionally(new SQLException("Loan event writer is closed"));
+        }
+    }
+
+    /**
+     * Stops accepting events, commits everything already queued and stops the flusher thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+    }
+
+    /**
+     * @return events waiting for the next batch
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getEventCount() {
+        return events.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return batches whose commit failed, counted once however many retries isolated their bad events
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * @return commit latency of each batch in microseconds
+     */
+    public Histogram getCommitLatency() {
+        return commitMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoanEventWriter[queued=%d, events=%d, batches=%d, failed=%d, batchSize{%s}, commit{%s}]",
+                getQueuedCount(), getEventCount(), getBatchCount(), getFailedBatchCount(), batchSizes, commitMicros);
+    }
+}
@@ -0,0 +1,143 @@
+package school.librarylogging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of luminance planes, and conversion of camera frames into them.
+ *
+ * Frames of one camera always have the same size, so planes are pooled by exact length and a steady
+ * scan loop stops allocating them after the first few frames. Camera frames (3-byte BGR rasters) are
+ * converted straight from their pixel bytes; other images go through {@link BufferedImage#getRGB}.
+ *
+ * Safe for use from several threads.
+ */
+public class LuminancePlanes {
+
+    private static final int DEFAULT_MAX_PER_SIZE = 8;
+
+    private final int maxPerSize;
+    private final Map<Integer, ArrayDeque<byte[]>> free = new HashMap<>();
+
+    // Metrics
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public LuminancePlanes() {
+        this(DEFAULT_MAX_PER_SIZE);
+    }
+
+    /**
+     * @param maxPerSize Planes of each size kept for reuse; more are left to the garbage collector
+     */
+    public LuminancePlanes(int maxPerSize) {
+        this.maxPerSize = maxPerSize;
+    }
+
+    /**
+     * @return a plane of exactly {@code size} bytes with undefined content; return it with {@link #release}
+     */
+    public byte[] acquire(int size) {
+        synchronized (free) {
+            ArrayDeque<byte[]> planes = free.get(size);
+            if (planes != null && !planes.isEmpty()) {
+                reused.incrementAndGet();
+                return planes.pop();
+            }
+        }
+        allocated.incrementAndGet();
+        return new byte[size];
+    }
+
+    public void release(byte[] plane) {
+        synchronized (free) {
+            ArrayDeque<byte[]> planes = free.computeIfAbsent(plane.length, size -> new ArrayDeque<>());
+            if (planes.size() < maxPerSize) {
+                planes.push(plane);
+            }
+        }
+    }
+
+    /**
+     * Reads the luminance of a region of the frame into a pooled plane, averaging
+     * {@code scale x scale} blocks of pixels.
+     *
+     * @param scaledWidth  Width of the result; the region is {@code scaledWidth * scale} pixels wide
+     * @param scaledHeight Height of the result
+     * @return a plane of {@code scaledWidth * scaledHeight} bytes, row by row; return it with {@link #release}
+     */
+    public byte[] read(BufferedImage image, int left, int top, int scaledWidth, int scaledHeight, int scale) {
+        byte[] plane = acquire(scaledWidth * scaledHeight);
+        int divisor = scale * scale;
+
+        // Camera frames are plain BGR byte images: read their pixels directly rather than through getRGB
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR && image.getRaster().getParent() == null) {
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int stride = image.getWidth() * 3;
+            int target = 0;
+            for (int y = 0; y < scaledHeight; y++) {
+                int rowStart = (top + y * scale) * stride + left * 3;
+                for (int x = 0; x < scaledWidth; x++) {
+                    int sum = 0;
+                    for (int dy = 0; dy < scale; dy++) {
+                        int offset = rowStart + dy * stride + x * scale * 3;
+                        for (int dx = 0; dx < scale; dx++, offset += 3) {
+                            sum += ((pixels[offset + 2] & 0xFF) * 77 + (pixels[offset + 1] & 0xFF) * 150
+                                    + (pixels[offset] & 0xFF) * 29) >> 8;
+                        }
+                    }
+                    plane[target++] = (byte) (sum / divisor);
+                }
+            }
+            return plane;
+        }
+
+        int[] row = new int[scaledWidth * scale];
+        int[] sums = new int[scaledWidth];
+        for (int y = 0; y < scaledHeight; y++) {
+            Arrays.fill(sums, 0);
+            for (int dy = 0; dy < scale; dy++) {
+                image.getRGB(left, top + y * scale + dy, row.length, 1, row, 0, row.length);
+                for (int x = 0; x < row.length; x++) {
+                    int rgb = row[x];
+                    sums[x / scale] += (((rgb >> 16) & 0xFF) * 77 + ((rgb >> 8) & 0xFF) * 150 + (rgb & 0xFF) * 29) >> 8;
+                }
+            }
+            for (int x = 0; x < scaledWidth; x++) {
+                plane[y * scaledWidth + x] = (byte) (sums[x] / divisor);
+            }
+        }
+        return plane;
+    }
+
+    /**
+     * Copies a rectangle of a plane into a pooled plane of its own.
+     *
+     * @return a plane of {@code width * height} bytes; return it with {@link #release}
+     */
+    public byte[] copy(byte[] source, int sourceWidth, int left, int top, int width, int height) {
+        byte[] plane = acquire(width * height);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(source, (top + y) * sourceWidth + left, plane, y * width, width);
+        }
+        return plane;
+    }
+
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LuminancePlanes[allocated=%d, reused=%d]", getAllocatedCount(), getReusedCount());
+    }
+}
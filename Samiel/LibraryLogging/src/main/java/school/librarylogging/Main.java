@@ -104,6 +104,7 @@ public class Main {
         *
         * Launch Java Swing Login Form as the entry point
         * */
+        Metrics.startReporter();
         LoginForm.showLoginForm();
         DatabaseHandler.main(args);
     }
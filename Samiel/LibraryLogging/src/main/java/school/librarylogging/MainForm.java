@@ -1,11 +1,17 @@
 package school.librarylogging;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main Form - Role-based main UI with welcome message and role-specific features.
@@ -19,7 +25,10 @@ public class MainForm extends JFrame {
     private JPanel mainContentPanel;
     private JLabel statusMessageLabel;
     private JTable bookTable;
-    private DefaultTableModel tableModel;
+    private JProgressBar busyIndicator;
+    private JButton cancelTasksButton;
+    private final List<CompletableFuture<?>> pendingTasks = new ArrayList<>();
+    private final Set<CompletableFuture<?>> cancelRequested = new HashSet<>();
     
     public MainForm(User user) {
         this.currentUser = user;
@@ -62,9 +71,21 @@ public class MainForm extends JFrame {
         statusMessageLabel.setForeground(Color.BLUE);
         statusPanel.add(statusMessageLabel, BorderLayout.WEST);
         
+        // Loading indicator and cancel button, shown while database calls are in flight
+        busyIndicator = new JProgressBar();
+        busyIndicator.setIndeterminate(true);
+        busyIndicator.setVisible(false);
+        cancelTasksButton = new JButton("Cancel");
+        cancelTasksButton.setVisible(false);
+        cancelTasksButton.addActionListener(e -> cancelPendingTasks());
+        
         JButton logoutButton = new JButton("Logout");
         logoutButton.addActionListener(e -> logout());
-        statusPanel.add(logoutButton, BorderLayout.EAST);
+        JPanel statusButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        statusButtons.add(busyIndicator);
+        statusButtons.add(cancelTasksButton);
+        statusButtons.add(logoutButton);
+        statusPanel.add(statusButtons, BorderLayout.EAST);
         
         mainPanel.add(statusPanel, BorderLayout.SOUTH);
         
@@ -91,6 +112,12 @@ public class MainForm extends JFrame {
             addButton("Remove a Book", e -> showRemoveBookDialog());
             mainContentPanel.add(Box.createVerticalStrut(10));
             addButton("Update a Book", e -> showUpdateBookDialog());
+            mainContentPanel.add(Box.createVerticalStrut(10));
+            addButton("Return a Book", e -> showReturnBookDialog());
+            mainContentPanel.add(Box.createVerticalStrut(10));
+            addButton("Import Catalog (CSV/TSV)", e -> showImportCatalogDialog());
+            mainContentPanel.add(Box.createVerticalStrut(10));
+            addButton("Scan Station (All Cameras)", e -> openScanStation());
         }
         
         // All users can view books
@@ -130,6 +157,60 @@ public class MainForm extends JFrame {
         mainContentPanel.add(button);
     }
     
+    /**
+     * Runs a database write in the background while the window stays responsive.
+     * Shows the loading indicator until the call finishes, then hands the result to {@code onSuccess}
+     * on the EDT. Failures are reported with an error dialog. Cancelling only asks the write to stop,
+     * so its real outcome is still reported.
+     *
+     * @param progressMessage Status bar text while the call runs
+     * @param errorPrefix Start of the error dialog message, e.g. "Failed to add book"
+     */
+    private <T> CompletableFuture<T> runDatabaseTask(String progressMessage, AsyncDatabase.Task<T> task,
+                                                     String errorPrefix, java.util.function.Consumer<T> onSuccess) {
+        statusMessageLabel.setText(progressMessage);
+        CompletableFuture<T> future = AsyncDatabase.supply(task);
+        pendingTasks.add(future);
+        updateBusyState();
+        future.whenCompleteAsync((result, error) -> {
+            pendingTasks.remove(future);
+            updateBusyState();
+        }, AsyncDatabase.EDT);
+        AsyncDatabase.onEdt(future, result -> {
+            statusMessageLabel.setText(cancelRequested.remove(future) ? "Finished before it could be cancelled." : " ");
+            onSuccess.accept(result);
+        }, error -> {
+            statusMessageLabel.setText(cancelRequested.remove(future) ? "Cancelled." : " ");
+            JOptionPane.showMessageDialog(this,
+                    errorPrefix + ": " + error.getMessage(),
+                    "Database Error", JOptionPane.ERROR_MESSAGE);
+        });
+        return future;
+    }
+    
+    private void updateBusyState() {
+        boolean busy = !pendingTasks.isEmpty();
+        busyIndicator.setVisible(busy);
+        cancelTasksButton.setVisible(busy);
+        setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        revalidate();
+    }
+    
+    /**
+     * Asks every pending write to stop. A write that already reached the database may still commit,
+     * so the status bar only says which outcome it had once it finishes.
+     */
+    private void cancelPendingTasks() {
+        if (pendingTasks.isEmpty()) {
+            return;
+        }
+        for (CompletableFuture<?> future : pendingTasks) {
+            cancelRequested.add(future);
+            AsyncDatabase.interrupt(future);
+        }
+        statusMessageLabel.setText("Cancel requested; waiting for " + pendingTasks.size() + " change(s) to finish...");
+    }
+    
     private void openQRScanner() {
         statusMessageLabel.setText("Opening QR Scanner...");
         SwingUtilities.invokeLater(() -> {
@@ -139,6 +220,15 @@ public class MainForm extends JFrame {
         });
     }
     
+    private void openScanStation() {
+        statusMessageLabel.setText("Opening Scan Station...");
+        SwingUtilities.invokeLater(() -> {
+            ScanStationForm stationForm = new ScanStationForm(this, currentUser);
+            stationForm.setVisible(true);
+            setVisible(false);
+        });
+    }
+    
     private void showAddBookDialog() {
         JTextField bookNameField = new JTextField(20);
         
@@ -152,17 +242,12 @@ public class MainForm extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             String bookName = bookNameField.getText().trim();
             if (!bookName.isEmpty()) {
-                statusMessageLabel.setText("Adding book: " + bookName);
-                try {
-                    DatabaseHandler.addBookDataToDatabase(bookName, 0);
-                    JOptionPane.showMessageDialog(this, 
-                            "Book '" + bookName + "' added successfully!", 
-                            "Success", JOptionPane.INFORMATION_MESSAGE);
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, 
-                            "Failed to add book: " + ex.getMessage(), 
-                            "Database Error", JOptionPane.ERROR_MESSAGE);
-                }
+                runDatabaseTask("Adding book: " + bookName,
+                        () -> DatabaseHandler.addBookDataToDatabase(bookName, 0),
+                        "Failed to add book",
+                        bookId -> JOptionPane.showMessageDialog(this, 
+                                "Book '" + bookName + "' added successfully!", 
+                                "Success", JOptionPane.INFORMATION_MESSAGE));
             } else {
                 JOptionPane.showMessageDialog(this, 
                         "Book name cannot be empty", 
@@ -188,20 +273,19 @@ public class MainForm extends JFrame {
                         "Are you sure you want to remove book with ID: " + bookId + "?",
                         "Confirm Removal", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    statusMessageLabel.setText("Removing book with ID: " + bookId);
                     try {
-                        DatabaseHandler.removeBookFromDatabase(Integer.parseInt(bookId));
-                        JOptionPane.showMessageDialog(this, 
-                                "Book removed successfully!", 
-                                "Success", JOptionPane.INFORMATION_MESSAGE);
+                        int id = Integer.parseInt(bookId);
+                        runDatabaseTask("Removing book with ID: " + bookId,
+                                () -> DatabaseHandler.removeBookFromDatabase(id),
+                                "Failed to remove book",
+                                removed -> JOptionPane.showMessageDialog(this, 
+                                        removed ? "Book removed successfully!" : "No book found with ID: " + bookId, 
+                                        removed ? "Success" : "Not Found",
+                                        removed ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE));
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(this, 
                                 "Book ID must be a valid number", 
                                 "Error", JOptionPane.ERROR_MESSAGE);
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(this, 
-                                "Failed to remove book: " + ex.getMessage(), 
-                                "Database Error", JOptionPane.ERROR_MESSAGE);
                     }
                 }
             } else {
@@ -234,20 +318,19 @@ public class MainForm extends JFrame {
             int borrowedStatus = borrowedCombo.getSelectedIndex();
             
             if (!bookId.isEmpty()) {
-                statusMessageLabel.setText("Updating book with ID: " + bookId);
                 try {
-                    DatabaseHandler.updateBookInDatabase(Integer.parseInt(bookId), newBookName, borrowedStatus);
-                    JOptionPane.showMessageDialog(this, 
-                            "Book updated successfully!", 
-                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                    int id = Integer.parseInt(bookId);
+                    runDatabaseTask("Updating book with ID: " + bookId,
+                            () -> DatabaseHandler.updateBookInDatabase(id, newBookName, borrowedStatus),
+                            "Failed to update book",
+                            updated -> JOptionPane.showMessageDialog(this, 
+                                    updated ? "Book updated successfully!" : "No book found with ID: " + bookId, 
+                                    updated ? "Success" : "Not Found",
+                                    updated ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE));
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(this, 
                             "Book ID must be a valid number", 
                             "Error", JOptionPane.ERROR_MESSAGE);
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, 
-                            "Failed to update book: " + ex.getMessage(), 
-                            "Database Error", JOptionPane.ERROR_MESSAGE);
                 }
             } else {
                 JOptionPane.showMessageDialog(this, 
@@ -257,53 +340,169 @@ public class MainForm extends JFrame {
         }
     }
     
+    private void showReturnBookDialog() {
+        String bookId = JOptionPane.showInputDialog(this, "Book ID:", "Return a Book", JOptionPane.PLAIN_MESSAGE);
+        if (bookId == null) {
+            return;
+        }
+        if (bookId.trim().isEmpty()) {
+            JOptionPane.showMessageDialog(this, 
+                    "Book ID cannot be empty", 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        runDatabaseTask("Returning book with ID: " + bookId.trim(),
+                () -> BookHandler.returnBook(bookId),
+                "Failed to return book",
+                returned -> JOptionPane.showMessageDialog(this, 
+                        returned ? "Book returned successfully!" : "Book " + bookId.trim() + " is not currently borrowed", 
+                        returned ? "Success" : "Not Borrowed",
+                        returned ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE));
+    }
+    
+    private void showImportCatalogDialog() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Catalog");
+        chooser.setFileFilter(new FileNameExtensionFilter("Catalog files (*.csv, *.tsv)", "csv", "tsv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path catalog = chooser.getSelectedFile().toPath();
+        statusMessageLabel.setText("Importing " + catalog.getFileName() + "...");
+
+        // Import runs in the background; progress is published after every committed chunk
+        new SwingWorker<CatalogImporter.Result, String>() {
+            @Override
+            protected CatalogImporter.Result doInBackground() throws Exception {
+                return DatabaseHandler.importCatalog(catalog, (committed, rowsPerSecond) ->
+                        publish(String.format("Imported %,d records (%,.0f rows/s)", committed, rowsPerSecond)));
+            }
+
+            @Override
+            protected void process(List<String> chunks) {
+                statusMessageLabel.setText(chunks.get(chunks.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    CatalogImporter.Result result = get();
+                    statusMessageLabel.setText(" ");
+                    JOptionPane.showMessageDialog(MainForm.this,
+                            String.format("Imported %,d books in %.1f s (%,.0f rows/s).%s%s",
+                                    result.imported(), result.elapsedMillis() / 1000.0, result.rowsPerSecond(),
+                                    result.resumedFrom() > 0 ? "\nResumed after " + result.resumedFrom() + " records." : "",
+                                    result.skipped() > 0 ? "\nSkipped " + result.skipped() + " rows without a book name." : ""),
+                            "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    statusMessageLabel.setText(" ");
+                    JOptionPane.showMessageDialog(MainForm.this,
+                            "Import stopped: " + ex.getCause().getMessage()
+                                    + "\nRun the import again on the same file to resume.",
+                            "Import Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void showBookTable() {
         // Create a dialog to display books in a table format
         JDialog tableDialog = new JDialog(this, "Book Records", true);
         tableDialog.setSize(500, 400);
         tableDialog.setLocationRelativeTo(this);
         
-        // Create table model with columns: book_id, book_name, borrowed
-        String[] columnNames = {"book_id", "book_name", "borrowed"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        
-        bookTable = new JTable(tableModel);
+        // Rows are fetched page by page in the background as the table is scrolled
+        LazyBookTableModel lazyModel = new LazyBookTableModel(null);
+        bookTable = new JTable(lazyModel);
         bookTable.getTableHeader().setReorderingAllowed(false);
         
+        JProgressBar loadingBar = new JProgressBar();
+        loadingBar.setIndeterminate(true);
+        loadingBar.setString("Loading...");
+        loadingBar.setStringPainted(true);
+        loadingBar.setVisible(false);
+        lazyModel.setLoadingListener(loadingBar::setVisible);
+        
         // Fetch data from database
-        try {
-            Object[][] bookData = DatabaseHandler.findBookAsTableData(null);
-            for (Object[] row : bookData) {
-                tableModel.addRow(row);
-            }
-        } catch (Exception ex) {
+        AsyncDatabase.onEdt(lazyModel.refresh(), ignored -> { }, error -> {
             // If database connection fails, show sample data as fallback
+            String[] columnNames = {"book_id", "book_name", "borrowed"};
             Object[][] sampleData = {
                 {1, "Introduction to Java", 0},
                 {2, "Database Systems", 1},
                 {3, "Data Structures", 0},
                 {4, "Science Fundamentals", 1}
             };
-            for (Object[] row : sampleData) {
-                tableModel.addRow(row);
-            }
+            bookTable.setModel(new DefaultTableModel(sampleData, columnNames) {
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
+            });
             statusMessageLabel.setText("Note: Showing sample data (database unavailable)");
-        }
+        });
         
         JScrollPane tableScrollPane = new JScrollPane(bookTable);
         tableDialog.add(tableScrollPane, BorderLayout.CENTER);
         
+        // Title search: ranked results from the search index, empty query shows the full listing again
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JTextField searchField = new JTextField(20);
+        JButton searchButton = new JButton("Search");
+        CompletableFuture<?>[] pendingSearch = new CompletableFuture<?>[1];
+        ActionListener search = e -> {
+            String query = searchField.getText().trim();
+            if (pendingSearch[0] != null) {
+                pendingSearch[0].cancel(true);
+            }
+            if (query.isEmpty()) {
+                bookTable.setModel(lazyModel);
+                return;
+            }
+            loadingBar.setVisible(true);
+            CompletableFuture<Object[][]> future = AsyncDatabase.supply(() -> DatabaseHandler.findBookAsTableData(query));
+            pendingSearch[0] = future;
+            AsyncDatabase.onEdt(future, results -> {
+                loadingBar.setVisible(lazyModel.isLoading());
+                bookTable.setModel(new DefaultTableModel(results, new String[]{"book_id", "book_name", "borrowed"}) {
+                    @Override
+                    public boolean isCellEditable(int row, int column) {
+                        return false;
+                    }
+                });
+                statusMessageLabel.setText(results.length + " book(s) found for \"" + query + "\"");
+            }, error -> {
+                loadingBar.setVisible(lazyModel.isLoading());
+                statusMessageLabel.setText("Search failed: " + error.getMessage());
+            });
+        };
+        searchField.addActionListener(search);
+        searchButton.addActionListener(search);
+        searchPanel.add(new JLabel("Title:"));
+        searchPanel.add(searchField);
+        searchPanel.add(searchButton);
+        tableDialog.add(searchPanel, BorderLayout.NORTH);
+        
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton closeButton = new JButton("Close");
         closeButton.addActionListener(e -> tableDialog.dispose());
+        buttonPanel.add(loadingBar);
         buttonPanel.add(closeButton);
         tableDialog.add(buttonPanel, BorderLayout.SOUTH);
         
+        // Stop fetching pages once the dialog is gone
+        tableDialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                lazyModel.cancelPending();
+                if (pendingSearch[0] != null) {
+                    pendingSearch[0].cancel(true);
+                }
+            }
+        });
+        
         tableDialog.setVisible(true);
     }
     
@@ -365,6 +564,7 @@ public class MainForm extends JFrame {
                 "Confirm Logout", JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
+            cancelPendingTasks();
             dispose();
             LoginForm.showLoginForm();
         }
@@ -0,0 +1,156 @@
+package school.librarylogging;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Times every call to another repository and counts its failures in {@link Metrics}, as
+ * {@code db.<method>.time} (microseconds) and {@code db.<method>.errors}, whatever the backend.
+ */
+public class MeteredBookRepository implements BookRepository {
+
+    private static final Operation ADD_BOOK = new Operation("addBook");
+    private static final Operation ADD_BOOKS = new Operation("addBooks");
+    private static final Operation GET_IMPORT_PROGRESS = new Operation("getImportProgress");
+    private static final Operation CLEAR_IMPORT_PROGRESS = new Operation("clearImportProgress");
+    private static final Operation REMOVE_BOOK = new Operation("removeBook");
+    private static final Operation UPDATE_BOOK = new Operation("updateBook");
+    private static final Operation UPDATE_BORROWED_BY_NAME = new Operation("updateBorrowedByName");
+    private static final Operation FIND_BOOKS = new Operation("findBooks");
+    private static final Operation FIND_BOOKS_BY_IDS = new Operation("findBooksByIds");
+    private static final Operation FIND_BOOK_PAGE = new Operation("findBookPage");
+    private static final Operation BORROW_BOOK = new Operation("borrowBook");
+    private static final Operation RETURN_BOOK = new Operation("returnBook");
+    private static final Operation APPLY_LOAN_EVENTS = new Operation("applyLoanEvents");
+
+    private final BookRepository delegate;
+
+    public MeteredBookRepository(BookRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * A repository call, which may fail with {@link SQLException}.
+     */
+    private interface Call<T> {
+        T run() throws SQLException;
+    }
+
+    private static final class Operation {
+        private final Histogram latency;
+        private final Metrics.Counter errors;
+
+        Operation(String method) {
+            this.latency = Metrics.histogram("db." + method + ".time", "us");
+            this.errors = Metrics.counter("db." + method + ".errors");
+        }
+
+        <T> T time(Call<T> call) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return call.run();
+            } catch (SQLException | RuntimeException ex) {
+                errors.increment();
+                throw ex;
+            } finally {
+                latency.record((System.nanoTime() - start) / 1000);
+            }
+        }
+    }
+
+    /**
+     * @return the repository whose calls are timed
+     */
+    public BookRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public int addBook(String bookName, int borrowed) throws SQLException {
+        return ADD_BOOK.time(() -> delegate.addBook(bookName, borrowed));
+    }
+
+    @Override
+    public void addBooks(List<Book> books) throws SQLException {
+        ADD_BOOKS.time(() -> {
+            delegate.addBooks(books);
+            return null;
+        });
+    }
+
+    @Override
+    public void addBooks(List<Book> books, String importKey, long committed) throws SQLException {
+        ADD_BOOKS.time(() -> {
+            delegate.addBooks(books, importKey, committed);
+            return null;
+        });
+    }
+
+    @Override
+    public long getImportProgress(String importKey) throws SQLException {
+        return GET_IMPORT_PROGRESS.time(() -> delegate.getImportProgress(importKey));
+    }
+
+    @Override
+    public void clearImportProgress(String importKey) throws SQLException {
+        CLEAR_IMPORT_PROGRESS.time(() -> {
+            delegate.clearImportProgress(importKey);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean removeBook(int bookId) throws SQLException {
+        return REMOVE_BOOK.time(() -> delegate.removeBook(bookId));
+    }
+
+    @Override
+    public boolean updateBook(int bookId, String newBookName, int borrowed) throws SQLException {
+        return UPDATE_BOOK.time(() -> delegate.updateBook(bookId, newBookName, borrowed));
+    }
+
+    @Override
+    public int updateBorrowedByName(String bookName, int borrowed) throws SQLException {
+        return UPDATE_BORROWED_BY_NAME.time(() -> delegate.updateBorrowedByName(bookName, borrowed));
+    }
+
+    @Override
+    public List<Book> findBooks(String bookName) throws SQLException {
+        return FIND_BOOKS.time(() -> delegate.findBooks(bookName));
+    }
+
+    @Override
+    public List<Book> findBooksByIds(List<Integer> bookIds) throws SQLException {
+        return FIND_BOOKS_BY_IDS.time(() -> delegate.findBooksByIds(bookIds));
+    }
+
+    @Override
+    public List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException {
+        return FIND_BOOK_PAGE.time(() -> delegate.findBookPage(bookName, afterBookId, limit));
+    }
+
+    @Override
+    public boolean borrowBook(int bookId, String borrower) throws SQLException {
+        return BORROW_BOOK.time(() -> delegate.borrowBook(bookId, borrower));
+    }
+
+    @Override
+    public boolean returnBook(int bookId) throws SQLException {
+        return RETURN_BOOK.time(() -> delegate.returnBook(bookId));
+    }
+
+    @Override
+    public boolean[] applyLoanEvents(List<LoanEvent> events) throws SQLException {
+        return APPLY_LOAN_EVENTS.time(() -> delegate.applyLoanEvents(events));
+    }
+
+    @Override
+    public String describe() {
+        return delegate.describe();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
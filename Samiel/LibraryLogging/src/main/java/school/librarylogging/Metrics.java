@@ -0,0 +1,373 @@
+package school.librarylogging;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Process-wide registry of named metrics: counters, gauges and {@link Histogram}s.
+ *
+ * Components keep their metrics in static fields and update them where the work happens. An update is a
+ * {@link LongAdder} increment or a lock-free histogram record, tens of nanoseconds next to a decode or a query.
+ * Metrics are named {@code <area>.<what>}, e.g. {@code scan.decode.time} or {@code db.findBooksByIds.errors}.
+ *
+ * Every metric is published as an MXBean named {@code school.librarylogging:type=<kind>,name=<name>} for
+ * JConsole or any JMX agent, unless {@code -Dlibrarylogging.metrics.jmx=false}. Once {@link #startReporter()}
+ * is called, what changed is also logged every {@code -Dlibrarylogging.metrics.intervalMs} (60 s, 0 to turn
+ * it off): counters with their rate, histograms over the interval only. The log goes to the console, or to
+ * rolling files with {@code -Dlibrarylogging.metrics.file} ({@code .fileLimit} bytes per file, {@code .fileCount}
+ * files kept).
+ */
+public final class Metrics {
+
+    private static final String DOMAIN = "school.librarylogging";
+    private static final boolean JMX = !"false".equalsIgnoreCase(System.getProperty("librarylogging.metrics.jmx"));
+    private static final long INTERVAL_MS = Long.getLong("librarylogging.metrics.intervalMs", 60_000L);
+    private static final String LOG_FILE = System.getProperty("librarylogging.metrics.file");
+    private static final int LOG_FILE_LIMIT = Integer.getInteger("librarylogging.metrics.fileLimit", 1 << 20);
+    private static final int LOG_FILE_COUNT = Integer.getInteger("librarylogging.metrics.fileCount", 5);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Sorted by name, so related metrics are listed together
+    private static final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    private static ScheduledExecutorService reporter;
+    private static Consumer<String> reportLog;
+    // Values at the previous report, used only by the reporter thread
+    private static final Map<String, Reported> reported = new HashMap<>();
+    private static long reportedAt;
+
+    private Metrics() {
+    }
+
+    /**
+     * A count that only goes up, e.g. frames decoded or queries failed.
+     */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * A value read when it is reported, e.g. a cache hit rate or a queue length.
+     */
+    public interface GaugeMXBean {
+        double getValue();
+    }
+
+    /**
+     * A distribution of values, e.g. query latencies, with percentiles from a {@link Histogram}.
+     */
+    public interface HistogramMXBean {
+        String getUnit();
+
+        long getCount();
+
+        double getMean();
+
+        long getMax();
+
+        long get50thPercentile();
+
+        long get90thPercentile();
+
+        long get99thPercentile();
+
+        long get999thPercentile();
+    }
+
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    private record Reported(Object metric, Object value) {
+    }
+
+    private record Gauge(DoubleSupplier value) implements GaugeMXBean {
+        @Override
+        public double getValue() {
+            try {
+                return value.getAsDouble();
+            } catch (RuntimeException ex) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    private record HistogramView(Histogram histogram) implements HistogramMXBean {
+        @Override
+        public String getUnit() {
+            return histogram.getUnit();
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMax();
+        }
+
+        @Override
+        public long get50thPercentile() {
+            return histogram.getPercentile(50);
+        }
+
+        @Override
+        public long get90thPercentile() {
+            return histogram.getPercentile(90);
+        }
+
+        @Override
+        public long get99thPercentile() {
+            return histogram.getPercentile(99);
+        }
+
+        @Override
+        public long get999thPercentile() {
+            return histogram.getPercentile(99.9);
+        }
+    }
+
+    /**
+     * @return the counter with this name, registered on first use
+     * @throws IllegalArgumentException if the name is taken by another kind of metric
+     */
+    public static Counter counter(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            // Not computeIfAbsent: the skip list may run its function more than once, publishing every loser too
+            Counter created = new Counter();
+            metric = metrics.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+                publish(name, "Counter", created);
+            }
+        }
+        if (!(metric instanceof Counter counter)) {
+            throw new IllegalArgumentException(name + " is not a counter");
+        }
+        return counter;
+    }
+
+    /**
+     * @param unit Unit of the recorded values, e.g. "us"
+     * @return the histogram with this name, registered on first use
+     * @throws IllegalArgumentException if the name is taken by another kind of metric
+     */
+    public static Histogram histogram(String name, String unit) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            Histogram created = new Histogram(unit);
+            metric = metrics.putIfAbsent(name, created);
+            if (metric == null) {
+                metric = created;
+                publish(name, "Histogram", new HistogramView(created));
+            }
+        }
+        if (!(metric instanceof Histogram histogram)) {
+            throw new IllegalArgumentException(name + " is not a histogram");
+        }
+        return histogram;
+    }
+
+    /**
+     * Publishes a histogram a component already keeps, replacing any earlier one with this name, e.g. the
+     * commit latency of the current loan writer.
+     */
+    public static void register(String name, Histogram histogram) {
+        metrics.put(name, histogram);
+        publish(name, "Histogram", new HistogramView(histogram));
+    }
+
+    /**
+     * Registers a gauge, replacing any earlier one with this name. The supplier is called from the reporter
+     * and JMX threads, so it must be thread-safe and cheap.
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        Gauge gauge = new Gauge(value);
+        metrics.put(name, gauge);
+        publish(name, "Gauge", gauge);
+    }
+
+    /**
+     * @return {@code part / whole}, or 0 when {@code whole} is 0; for hit rate gauges
+     */
+    public static double ratio(long part, long whole) {
+        return whole == 0 ? 0 : (double) part / whole;
+    }
+
+    private static void publish(String name, String type, Object bean) {
+        if (!JMX) {
+            return;
+        }
+        try {
+            Hashtable<String, String> properties = new Hashtable<>();
+            properties.put("type", type);
+            properties.put("name", name);
+            ObjectName objectName = new ObjectName(DOMAIN, properties);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+        } catch (JMException ex) {
+            System.out.println("Error! Cannot publish metric " + name + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Starts logging what changed every interval on a daemon thread. Calling it again does nothing.
+     */
+    public static synchronized void startReporter() {
+        if (reporter != null || INTERVAL_MS <= 0) {
+            return;
+        }
+        reportLog = openLog();
+        reportedAt = System.nanoTime();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(Metrics::report, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Consumer<String> openLog() {
+        if (LOG_FILE == null || LOG_FILE.isBlank()) {
+            return System.out::println;
+        }
+        try {
+            FileHandler file = new FileHandler(LOG_FILE, LOG_FILE_LIMIT, LOG_FILE_COUNT, true);
+            file.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord record) {
+                    return record.getMessage() + System.lineSeparator();
+                }
+            });
+            return report -> {
+                file.publish(new LogRecord(Level.INFO, report));
+                file.flush();
+            };
+        } catch (IOException ex) {
+            System.out.println("Error! Cannot open metrics log " + LOG_FILE + ": " + ex.getMessage());
+            return System.out::println;
+        }
+    }
+
+    private static void report() {
+        try {
+            String report = changedSinceLastReport();
+            if (report != null) {
+                reportLog.accept(report);
+            }
+        } catch (RuntimeException ex) {
+            // Keep the schedule alive; a throwing task would cancel it
+            System.out.println("Error! Metrics report failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return the metrics that changed since the previous report, or null if none did
+     */
+    private static String changedSinceLastReport() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - reportedAt) / 1e9);
+        reportedAt = now;
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            Reported last = reported.get(name);
+            // A metric replaced since the last report starts over
+            Object previous = last != null && last.metric() == metric ? last.value() : null;
+            if (metric instanceof Counter counter) {
+                long count = counter.getCount();
+                long added = count - (previous instanceof Long value ? value : 0);
+                reported.put(name, new Reported(metric, count));
+                if (added != 0) {
+                    report.append(String.format("%n  %s %d (+%d, %.1f/s)", name, count, added, added / seconds));
+                }
+            } else if (metric instanceof Histogram histogram) {
+                Histogram snapshot = histogram.snapshot();
+                Histogram interval = previous instanceof Histogram value ? snapshot.since(value) : snapshot;
+                reported.put(name, new Reported(metric, snapshot));
+                if (interval.getCount() > 0) {
+                    report.append("\n  ").append(name).append(" {").append(interval).append('}');
+                }
+            } else if (metric instanceof Gauge gauge) {
+                double value = gauge.getValue();
+                reported.put(name, new Reported(metric, value));
+                if (!(previous instanceof Double earlier) || Double.compare(earlier, value) != 0) {
+                    report.append(String.format("%n  %s %s", name, format(value)));
+                }
+            }
+        }
+        if (report.length() == 0) {
+            return null;
+        }
+        return String.format("Metrics at %s, last %.0f s:", LocalDateTime.now().format(TIMESTAMP), seconds) + report;
+    }
+
+    /**
+     * @return every metric with its current value, one per line
+     */
+    public static String snapshot() {
+        StringBuilder snapshot = new StringBuilder();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            Object metric = entry.getValue();
+            snapshot.append(entry.getKey()).append(' ');
+            if (metric instanceof Counter counter) {
+                snapshot.append(counter.getCount());
+            } else if (metric instanceof Histogram histogram) {
+                snapshot.append('{').append(histogram).append('}');
+            } else if (metric instanceof Gauge gauge) {
+                snapshot.append(format(gauge.getValue()));
+            }
+            snapshot.append('\n');
+        }
+        return snapshot.toString();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value)
+                : String.format("%.3f", value);
+    }
+}
@@ -0,0 +1,65 @@
+package school.librarylogging;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Replays a Motion JPEG video: a file of JPEG frames back to back, as IP cameras stream and as
+ * {@code ffmpeg -i day.mp4 -c:v mjpeg -f mjpeg day.mjpeg} writes. Frames are read one at a time, so a whole
+ * day of recording never has to fit in memory.
+ */
+public class MjpegFrameSource implements FrameSource {
+
+    private final Path file;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private int next;
+
+    /**
+     * @throws IOException if the file cannot be opened or no JPEG reader is available
+     */
+    public MjpegFrameSource(Path file) throws IOException {
+        this.file = file;
+        this.input = ImageIO.createImageInputStream(file.toFile());
+        if (input == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("No JPEG reader available");
+        }
+        this.reader = readers.next();
+        // Not seek-forward-only: the JPEG reader finds each frame by the markers between them
+        reader.setInput(input, false, true);
+    }
+
+    /**
+     * @throws IOException if a frame is corrupt
+     */
+    @Override
+    public BufferedImage next() throws IOException {
+        try {
+            return reader.read(next++);
+        } catch (IndexOutOfBoundsException ex) {
+            // Past the last frame
+            return null;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return file.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+}
@@ -0,0 +1,217 @@
+package school.librarylogging;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds every QR code in a frame, for checking out a stack of books at once.
+ *
+ * The frame's luminance is read once into a pooled plane. The full frame and a 2x2 grid of overlapping
+ * tiles (copied into pooled planes of their own) are each decoded with ZXing's {@link QRCodeMultiReader}
+ * in parallel on a small pool. Tiles catch codes the full-frame pass misses when many finder patterns are
+ * in view. Results are deduplicated by text and their points mapped to frame coordinates.
+ *
+ * Unlike {@link QrDecoder}, a MultiQrDecoder may be shared between threads.
+ */
+public class MultiQrDecoder implements AutoCloseable {
+
+    private static final int GRID = 2;
+    // Tiles overlap so a code on a tile border is whole in at least one tile
+    private static final double TILE_FRACTION = 0.625;
+
+    private final ExecutorService pool;
+    private final LuminancePlanes planes = new LuminancePlanes();
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+
+    // Metrics
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong codes = new AtomicLong();
+    private final Histogram decodeMicros = new Histogram("us");
+
+    public MultiQrDecoder() {
+        this(Math.min(4, Runtime.getRuntime().availableProcessors()), false);
+    }
+
+    /**
+     * @param threads   Size of the decode pool
+     * @param tryHarder Whether every region is decoded with ZXing's TRY_HARDER hint
+     */
+    public MultiQrDecoder(int threads, boolean tryHarder) {
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "qr-multi-decoder-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Decodes all codes in the frame.
+     *
+     * @return the distinct codes found, in the order they were first seen; empty if none
+     * @throws InterruptedException if interrupted while waiting for the regions
+     */
+    public List<Result> decodeMultiple(BufferedImage image) throws InterruptedException {
+        long start = System.nanoTime();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] luminance = planes.read(image, 0, 0, width, height, 1);
+        FramePlanes framePlanes = new FramePlanes(luminance);
+
+        Map<String, Result> distinct = new LinkedHashMap<>();
+        try {
+            List<Callable<Result[]>> regions = new ArrayList<>();
+            regions.add(framePlanes.use(() -> decodeRegion(luminance, width, height, 0, 0)));
+            int tileWidth = (int) (width * TILE_FRACTION);
+            int tileHeight = (int) (height * TILE_FRACTION);
+            for (int row = 0; row < GRID; row++) {
+                for (int column = 0; column < GRID; column++) {
+                    int left = column * (width - tileWidth) / (GRID - 1);
+                    int top = row * (height - tileHeight) / (GRID - 1);
+                    byte[] tile = planes.copy(luminance, width, left, top, tileWidth, tileHeight);
+                    framePlanes.tiles.add(tile);
+                    regions.add(framePlanes.use(() -> decodeRegion(tile, tileWidth, tileHeight, left, top)));
+                }
+            }
+
+            for (Future<Result[]> region : pool.invokeAll(regions)) {
+                try {
+                    for (Result result : region.get()) {
+                        distinct.putIfAbsent(result.getText(), result);
+                    }
+                } catch (ExecutionException ex) {
+                    System.out.println("Error! Region decode failed: " + ex.getCause().getMessage());
+                }
+            }
+        } finally {
+            // If interrupted, invokeAll returns while regions may still be decoding: the last one releases the planes
+            framePlanes.release();
+        }
+
+        long micros = (System.nanoTime() - start) / 1000;
+        frames.incrementAndGet();
+        codes.addAndGet(distinct.size());
+        decodeMicros.record(micros);
+        QrDecoder.FRAMES_DECODED.increment();
+        if (!distinct.isEmpty()) {
+            QrDecoder.CODES_FOUND.increment();
+        }
+        QrDecoder.DECODE_TIME.record(micros);
+        return new ArrayList<>(distinct.values());
+    }
+
+    /**
+     * The planes of one frame, given back to the pool once the caller and every region that ran are done with
+     * them. A region cancelled before it started never lets go, so its frame's planes are dropped instead of
+     * being reused while another decode might still read them.
+     */
+    private final class FramePlanes {
+        private final byte[] luminance;
+        private final List<byte[]> tiles = new ArrayList<>(GRID * GRID);
+        // The caller plus every region handed to the pool
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        FramePlanes(byte[] luminance) {
+            this.luminance = luminance;
+        }
+
+        Callable<Result[]> use(Callable<Result[]> region) {
+            users.incrementAndGet();
+            return () -> {
+                try {
+                    return region.call();
+                } finally {
+                    release();
+                }
+            };
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0) {
+                planes.release(luminance);
+                tiles.forEach(planes::release);
+            }
+        }
+    }
+
+    /**
+     * @param left Position of the region in the frame, added to the result points
+     * @param top  Position of the region in the frame
+     */
+    private Result[] decodeRegion(byte[] plane, int width, int height, int left, int top) {
+        PlaneLuminanceSource source = new PlaneLuminanceSource(plane, width, height);
+        try {
+            // The reader keeps no state between calls, but is cheap enough to create per region
+            Result[] results = new QRCodeMultiReader().decodeMultiple(new BinaryBitmap(new HybridBinarizer(source)), hints);
+            if (left != 0 || top != 0) {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = offset(results[i], left, top);
+                }
+            }
+            return results;
+        } catch (NotFoundException ex) {
+            return new Result[0];
+        }
+    }
+
+    private static Result offset(Result result, int left, int top) {
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] moved = new ResultPoint[points == null ? 0 : points.length];
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] = points[i] == null ? null : new ResultPoint(points[i].getX() + left, points[i].getY() + top);
+        }
+        Result frameResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), moved,
+                result.getBarcodeFormat(), result.getTimestamp());
+        if (result.getResultMetadata() != null) {
+            frameResult.putAllMetadata(result.getResultMetadata());
+        }
+        return frameResult;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getCodeCount() {
+        return codes.get();
+    }
+
+    /**
+     * @return decode time per frame in microseconds, all regions included
+     */
+    public Histogram getDecodeTime() {
+        return decodeMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MultiQrDecoder[frames=%d, codes=%d, decode{%s}, %s]", getFrameCount(), getCodeCount(), decodeMicros, planes);
+    }
+}
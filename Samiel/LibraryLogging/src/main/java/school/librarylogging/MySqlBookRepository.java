@@ -0,0 +1,348 @@
+package school.librarylogging;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BookRepository} backed by the MySQL book_record table.
+ * Every call leases its own connection from the {@link ConnectionPool}.
+ */
+public class MySqlBookRepository implements BookRepository {
+
+    // Maximum number of parameters in one IN (...) list
+    private static final int IN_LIST_CHUNK = 500;
+
+    private final ConnectionPool pool;
+
+    public MySqlBookRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * A unit of work run inside a transaction.
+     */
+    @FunctionalInterface
+    private interface TransactionBody<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs the body in a transaction on a leased connection: commits if it returns normally,
+     * rolls back if it throws any exception, checked or not.
+     */
+    private <T> T inTransaction(TransactionBody<T> body) throws SQLException {
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            Connection connection = lease.connection();
+            connection.setAutoCommit(false);
+            try {
+                T result = body.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException ex) {
+                // Roll back before the finally block turns autocommit back on, which would commit the partial work
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailure) {
+                    ex.addSuppressed(rollbackFailure);
+                }
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Creates the book_loans and catalog_imports tables if they do not exist yet.
+     *
+     * @throws SQLException if a table cannot be created
+     */
+    public void ensureSchema() throws SQLException {
+        String ddl = "CREATE TABLE IF NOT EXISTS book_loans ("
+                + "loan_id INT AUTO_INCREMENT PRIMARY KEY, "
+                + "book_id INT NOT NULL, "
+                + "borrower VARCHAR(100) NOT NULL, "
+                + "borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "returned_at TIMESTAMP NULL, "
+                + "INDEX idx_book_loans_open (book_id, returned_at))";
+        String importsDdl = "CREATE TABLE IF NOT EXISTS catalog_imports ("
+                + "import_key VARCHAR(512) PRIMARY KEY, "
+                + "committed BIGINT NOT NULL)";
+        try (ConnectionPool.Lease lease = pool.lease();
+             Statement statement = lease.connection().createStatement()) {
+            statement.execute(ddl);
+            statement.execute(importsDdl);
+        }
+    }
+
+    /**
+     * Helper method to build book query based on filter.
+     *
+     * @param bookName Optional filter by book name (null or empty for all books)
+     * @return SQL query string
+     */
+    private static String buildBookQuery(String bookName) {
+        if (bookName == null || bookName.trim().isEmpty()) {
+            return "SELECT book_id, book_name, borrowed FROM book_record ORDER BY book_id";
+        } else {
+            return "SELECT book_id, book_name, borrowed FROM book_record WHERE book_name LIKE ? ORDER BY book_id";
+        }
+    }
+
+    @Override
+    public int addBook(String bookName, int borrowed) throws SQLException {
+        String query = "INSERT INTO book_record (book_name, borrowed) VALUES (?, ?)";
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setString(1, bookName);
+            statement.setInt(2, borrowed);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                return keys.next() ? keys.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts the chunk with one JDBC batch in a single transaction.
+     * With rewriteBatchedStatements enabled on the URL the driver sends it as multi-row INSERTs.
+     */
+    @Override
+    public void addBooks(List<Book> books) throws SQLException {
+        if (books.isEmpty()) {
+            return;
+        }
+        inTransaction(connection -> insertBooks(connection, books));
+    }
+
+    /**
+     * Inserts the chunk and upserts the import's progress row in the same transaction.
+     */
+    @Override
+    public void addBooks(List<Book> books, String importKey, long committed) throws SQLException {
+        String query = "INSERT INTO catalog_imports (import_key, committed) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE committed = VALUES(committed)";
+        inTransaction(connection -> {
+            if (!books.isEmpty()) {
+                insertBooks(connection, books);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, importKey);
+                statement.setLong(2, committed);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private static int[] insertBooks(Connection connection, List<Book> books) throws SQLException {
+        String query = "INSERT INTO book_record (book_name, borrowed) VALUES (?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            for (Book book : books) {
+                statement.setString(1, book.bookName());
+                statement.setInt(2, book.borrowed());
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+    }
+
+    @Override
+    public long getImportProgress(String importKey) throws SQLException {
+        String query = "SELECT committed FROM catalog_imports WHERE import_key = ?";
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            statement.setString(1, importKey);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void clearImportProgress(String importKey) throws SQLException {
+        String query = "DELETE FROM catalog_imports WHERE import_key = ?";
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            statement.setString(1, importKey);
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean removeBook(int bookId) throws SQLException {
+        String query = "DELETE FROM book_record WHERE book_id = ?";
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            statement.setInt(1, bookId);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean updateBook(int bookId, String newBookName, int borrowed) throws SQLException {
+        boolean rename = newBookName != null && !newBookName.trim().isEmpty();
+        String query = rename
+                ? "UPDATE book_record SET book_name = ?, borrowed = ? WHERE book_id = ?"
+                : "UPDATE book_record SET borrowed = ? WHERE book_id = ?";
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            if (rename) {
+                statement.setString(1, newBookName.trim());
+                statement.setInt(2, borrowed);
+                statement.setInt(3, bookId);
+            } else {
+                statement.setInt(1, borrowed);
+                statement.setInt(2, bookId);
+            }
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public int updateBorrowedByName(String bookName, int borrowed) throws SQLException {
+        String query = "UPDATE book_record SET borrowed = ? WHERE book_name = ?";
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            statement.setInt(1, borrowed);
+            statement.setString(2, bookName);
+            return statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Book> findBooks(String bookName) throws SQLException {
+        String query = buildBookQuery(bookName);
+        List<Book> books = new ArrayList<>();
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            if (bookName != null && !bookName.trim().isEmpty()) {
+                statement.setString(1, "%" + bookName.trim() + "%");
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    books.add(new Book(result.getInt("book_id"), result.getString("book_name"), result.getInt("borrowed")));
+                }
+            }
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> findBooksByIds(List<Integer> bookIds) throws SQLException {
+        List<Book> books = new ArrayList<>(bookIds.size());
+        try (ConnectionPool.Lease lease = pool.lease()) {
+            for (int from = 0; from < bookIds.size(); from += IN_LIST_CHUNK) {
+                List<Integer> chunk = bookIds.subList(from, Math.min(from + IN_LIST_CHUNK, bookIds.size()));
+                String query = "SELECT book_id, book_name, borrowed FROM book_record WHERE book_id IN ("
+                        + "?,".repeat(chunk.size() - 1) + "?)";
+                try (PreparedStatement statement = lease.connection().prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            books.add(new Book(result.getInt("book_id"), result.getString("book_name"), result.getInt("borrowed")));
+                        }
+                    }
+                }
+            }
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException {
+        boolean filtered = bookName != null && !bookName.trim().isEmpty();
+        String query = filtered
+                ? "SELECT book_id, book_name, borrowed FROM book_record WHERE book_id > ? AND book_name LIKE ? ORDER BY book_id LIMIT ?"
+                : "SELECT book_id, book_name, borrowed FROM book_record WHERE book_id > ? ORDER BY book_id LIMIT ?";
+        List<Book> books = new ArrayList<>(limit);
+
+        try (ConnectionPool.Lease lease = pool.lease();
+             PreparedStatement statement = lease.connection().prepareStatement(query)) {
+            int index = 1;
+            statement.setInt(index++, afterBookId);
+            if (filtered) {
+                statement.setString(index++, "%" + bookName.trim() + "%");
+            }
+            statement.setInt(index, limit);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    books.add(new Book(result.getInt("book_id"), result.getString("book_name"), result.getInt("borrowed")));
+                }
+            }
+        }
+        return books;
+    }
+
+    /**
+     * The conditional UPDATE decides the outcome: MySQL row-locks the book, so of several stations
+     * borrowing the same copy exactly one sees an affected row. The loan row is only written by that one,
+     * in the same transaction. A station that loses the race never writes anything.
+     */
+    @Override
+    public boolean borrowBook(int bookId, String borrower) throws SQLException {
+        return applyLoanEvents(List.of(LoanEvent.borrowing(bookId, borrower)))[0];
+    }
+
+    @Override
+    public boolean returnBook(int bookId) throws SQLException {
+        return applyLoanEvents(List.of(LoanEvent.returning(bookId)))[0];
+    }
+
+    @Override
+    public boolean[] applyLoanEvents(List<LoanEvent> events) throws SQLException {
+        return inTransaction(connection -> {
+            boolean[] applied = new boolean[events.size()];
+            try (PreparedStatement borrow = connection.prepareStatement(
+                         "UPDATE book_record SET borrowed = 1 WHERE book_id = ? AND borrowed = 0");
+                 PreparedStatement giveBack = connection.prepareStatement(
+                         "UPDATE book_record SET borrowed = 0 WHERE book_id = ? AND borrowed = 1");
+                 PreparedStatement openLoan = connection.prepareStatement(
+                         "INSERT INTO book_loans (book_id, borrower) VALUES (?, ?)");
+                 PreparedStatement closeLoan = connection.prepareStatement(
+                         "UPDATE book_loans SET returned_at = CURRENT_TIMESTAMP WHERE book_id = ? AND returned_at IS NULL")) {
+                for (int i = 0; i < applied.length; i++) {
+                    LoanEvent event = events.get(i);
+                    // The conditional update decides the outcome; the loan row follows only if it matched
+                    PreparedStatement update = event.borrow() ? borrow : giveBack;
+                    update.setInt(1, event.bookId());
+                    if (update.executeUpdate() == 0) {
+                        continue;
+                    }
+                    if (event.borrow()) {
+                        openLoan.setInt(1, event.bookId());
+                        openLoan.setString(2, event.borrower());
+                        openLoan.executeUpdate();
+                    } else {
+                        closeLoan.setInt(1, event.bookId());
+                        closeLoan.executeUpdate();
+                    }
+                    applied[i] = true;
+                }
+            }
+            return applied;
+        });
+    }
+
+    @Override
+    public String describe() {
+        return "MySQL (" + pool + ")";
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
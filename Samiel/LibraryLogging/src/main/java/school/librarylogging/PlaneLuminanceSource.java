@@ -0,0 +1,78 @@
+package school.librarylogging;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Luminance source over a plane of one byte per pixel, without copying it.
+ *
+ * {@link #getMatrix()} returns the plane itself when the source covers all of it, which is what
+ * {@link com.google.zxing.common.HybridBinarizer} asks for, so a frame's luminance is never copied on its
+ * way to the binarizer. {@link #getRow} fills the caller's array when it is large enough.
+ * The plane must not be modified or returned to its pool while a decode using the source is running.
+ */
+final class PlaneLuminanceSource extends LuminanceSource {
+
+    private final byte[] plane;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+
+    /**
+     * @param plane      Luminance, row by row; exactly {@code dataWidth * dataHeight} bytes
+     * @param dataWidth  Width of the plane
+     * @param dataHeight Height of the plane
+     */
+    PlaneLuminanceSource(byte[] plane, int dataWidth, int dataHeight) {
+        this(plane, dataWidth, dataHeight, 0, 0, dataWidth, dataHeight);
+    }
+
+    private PlaneLuminanceSource(byte[] plane, int dataWidth, int dataHeight, int left, int top, int width, int height) {
+        super(width, height);
+        if (left + width > dataWidth || top + height > dataHeight || plane.length < dataWidth * dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within the plane");
+        }
+        this.plane = plane;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(plane, (top + y) * dataWidth + left, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        if (left == 0 && top == 0 && width == dataWidth && height == dataHeight && plane.length == width * height) {
+            return plane;
+        }
+        byte[] matrix = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(plane, (top + y) * dataWidth + left, matrix, y * width, width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int cropLeft, int cropTop, int width, int height) {
+        return new PlaneLuminanceSource(plane, dataWidth, dataHeight, left + cropLeft, top + cropTop, width, height);
+    }
+}
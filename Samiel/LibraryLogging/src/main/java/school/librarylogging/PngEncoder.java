@@ -0,0 +1,228 @@
+package school.librarylogging;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes black and white images as 1-bit grayscale PNG, row by row through a {@link Deflater} into a channel.
+ *
+ * A QR code is encoded straight from its {@link BitMatrix}, scaled the way {@link QrCode#render} scales it, so
+ * no image is built at all; a {@code TYPE_BYTE_BINARY} image is written from its raster as is, since its rows
+ * are already packed the way PNG packs 1-bit rows. The gain over ImageIO is speed, and no 32-bit image is
+ * built or converted on the way; the files themselves are only about 10% smaller.
+ *
+ * An encoder keeps its buffers and deflater between images: reuse one for bulk export, one per thread,
+ * and {@link #close()} it when done.
+ */
+public class PngEncoder implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+    private static final int BIT_DEPTH = 1;
+    private static final int COLOR_TYPE_GRAYSCALE = 0;
+    private static final byte FILTER_NONE = 0;
+    // Largest IDAT chunk written; PNG readers accept any split of the compressed stream
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] compressed = new byte[CHUNK_SIZE];
+    private int pending;
+    // Chunk header, data or trailer on its way to the channel
+    private final ByteBuffer out = ByteBuffer.allocate(CHUNK_SIZE + 12);
+    private byte[] row = new byte[0];
+
+    public PngEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level Deflate level, {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public PngEncoder(int level) {
+        deflater = new Deflater(level);
+    }
+
+    /**
+     * Writes a QR code scaled to a size, centered with the remainder as extra margin.
+     *
+     * @param modules One pixel per module, quiet zone included
+     * @param size    Width and height in pixels; never smaller than the matrix
+     */
+    public void write(BitMatrix modules, int size, WritableByteChannel channel) throws IOException {
+        int codeSize = modules.getWidth();
+        int outputSize = Math.max(size, codeSize);
+        int scale = outputSize / codeSize;
+        int padding = (outputSize - codeSize * scale) / 2;
+        int stride = (outputSize + 7) / 8;
+
+        begin(outputSize, outputSize, channel);
+        byte[] pixels = row(stride);
+        // Pixel value 1 is white in 1-bit grayscale
+        Arrays.fill(pixels, 1, stride + 1, (byte) 0xFF);
+        for (int y = 0; y < padding; y++) {
+            deflate(pixels, stride + 1, channel);
+        }
+        for (int y = 0; y < codeSize; y++) {
+            Arrays.fill(pixels, 1, stride + 1, (byte) 0xFF);
+            for (int x = 0; x < codeSize; x++) {
+                if (modules.get(x, y)) {
+                    for (int column = padding + x * scale, end = column + scale; column < end; column++) {
+                        pixels[1 + (column >> 3)] &= (byte) ~(0x80 >>> (column & 7));
+                    }
+                }
+            }
+            // Every pixel row of a module row is the same
+            for (int repeat = 0; repeat < scale; repeat++) {
+                deflate(pixels, stride + 1, channel);
+            }
+        }
+        Arrays.fill(pixels, 1, stride + 1, (byte) 0xFF);
+        for (int y = padding + codeSize * scale; y < outputSize; y++) {
+            deflate(pixels, stride + 1, channel);
+        }
+        end(channel);
+    }
+
+    /**
+     * Writes a 1-bit image, such as those {@link QrCode#createQrImage} and the label sheets use.
+     *
+     * @throws IllegalArgumentException if the image is not a black and white {@code TYPE_BYTE_BINARY} image
+     */
+    public void write(BufferedImage image, WritableByteChannel channel) throws IOException {
+        if (!isBilevel(image)) {
+            throw new IllegalArgumentException("Not a 1-bit black and white image");
+        }
+        MultiPixelPackedSampleModel layout = (MultiPixelPackedSampleModel) image.getRaster().getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) image.getRaster().getDataBuffer();
+        byte[] data = buffer.getData();
+        int stride = layout.getScanlineStride();
+        int rowBytes = (image.getWidth() + 7) / 8;
+        int offset = buffer.getOffset() + layout.getOffset(0, 0);
+        boolean inverted = isBlackIndexOne((IndexColorModel) image.getColorModel());
+
+        begin(image.getWidth(), image.getHeight(), channel);
+        byte[] pixels = row(rowBytes);
+        for (int y = 0; y < image.getHeight(); y++) {
+            System.arraycopy(data, offset + y * stride, pixels, 1, rowBytes);
+            if (inverted) {
+                for (int i = 1; i <= rowBytes; i++) {
+                    pixels[i] = (byte) ~pixels[i];
+                }
+            }
+            deflate(pixels, rowBytes + 1, channel);
+        }
+        end(channel);
+    }
+
+    /**
+     * @return whether {@link #write(BufferedImage, WritableByteChannel)} can write the image
+     */
+    public static boolean isBilevel(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_BYTE_BINARY
+                || image.getColorModel().getPixelSize() != 1
+                || !(image.getRaster().getSampleModel() instanceof MultiPixelPackedSampleModel)) {
+            return false;
+        }
+        IndexColorModel colors = (IndexColorModel) image.getColorModel();
+        return colors.getMapSize() == 2 && isGray(colors, 0) && isGray(colors, 1)
+                && (colors.getRGB(0) & 0xFFFFFF) != (colors.getRGB(1) & 0xFFFFFF);
+    }
+
+    private static boolean isGray(IndexColorModel colors, int index) {
+        int rgb = colors.getRGB(index) & 0xFFFFFF;
+        return rgb == 0 || rgb == 0xFFFFFF;
+    }
+
+    private static boolean isBlackIndexOne(IndexColorModel colors) {
+        return (colors.getRGB(1) & 0xFFFFFF) == 0;
+    }
+
+    /**
+     * @return the row buffer, with room for the filter byte and the packed pixels
+     */
+    private byte[] row(int rowBytes) {
+        if (row.length < rowBytes + 1) {
+            row = new byte[rowBytes + 1];
+        }
+        row[0] = FILTER_NONE;
+        return row;
+    }
+
+    private void begin(int width, int height, WritableByteChannel channel) throws IOException {
+        deflater.reset();
+        pending = 0;
+        out.clear();
+        out.put(SIGNATURE);
+        flush(channel);
+        ByteBuffer header = ByteBuffer.allocate(13)
+                .putInt(width).putInt(height)
+                .put((byte) BIT_DEPTH).put((byte) COLOR_TYPE_GRAYSCALE)
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+        chunk(IHDR, header.array(), 13, channel);
+    }
+
+    private void deflate(byte[] data, int length, WritableByteChannel channel) throws IOException {
+        deflater.setInput(data, 0, length);
+        while (!deflater.needsInput()) {
+            drain(channel);
+        }
+    }
+
+    private void end(WritableByteChannel channel) throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(channel);
+        }
+        if (pending > 0) {
+            chunk(IDAT, compressed, pending, channel);
+        }
+        chunk(IEND, compressed, 0, channel);
+    }
+
+    /**
+     * Deflates into the chunk buffer and writes it as an IDAT chunk when full.
+     */
+    private void drain(WritableByteChannel channel) throws IOException {
+        pending += deflater.deflate(compressed, pending, compressed.length - pending);
+        if (pending == compressed.length) {
+            chunk(IDAT, compressed, pending, channel);
+            pending = 0;
+        }
+    }
+
+    private void chunk(byte[] type, byte[] data, int length, WritableByteChannel channel) throws IOException {
+        crc.reset();
+        crc.update(type);
+        crc.update(data, 0, length);
+        out.clear();
+        out.putInt(length).put(type).put(data, 0, length).putInt((int) crc.getValue());
+        flush(channel);
+    }
+
+    private void flush(WritableByteChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+}
@@ -3,27 +3,20 @@ package school.librarylogging;
 import com.github.sarxos.webcam.Webcam;
 import com.github.sarxos.webcam.WebcamPanel;
 import com.github.sarxos.webcam.WebcamResolution;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.Result;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.ReaderException;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * QR Scanner Form - Camera interface for QR scanning workflow.
  * Shows device camera, displays scan status, and handles book borrowing flow.
  * Status states: "No QR", "QR Detected", "QR Scan Failed"
+ * The scanning itself is done by a {@link ScanEngine}; this form subscribes to it.
  */
-public class QRScannerForm extends JFrame implements Runnable {
+public class QRScannerForm extends JFrame implements ScanEngine.Listener {
     
     private MainForm parentForm;
     private User currentUser;
@@ -35,10 +28,19 @@ public class QRScannerForm extends JFrame implements Runnable {
     private JButton cancelButton;
     private JPanel qrInfoPanel;
     
-    private final java.util.concurrent.ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final AtomicBoolean scanning = new AtomicBoolean(true);
-    private String detectedQRContent = null;
-    private final Object scanningLock = new Object();
+    // Decodes, reads and looks up the codes the webcam sees; this form only shows them
+    private ScanEngine engine;
+    // The detection on display, parsed and looked up by the engine
+    private volatile ScanEngine.Detection detection = null;
+    private volatile String lastStatus;
+    
+    // Batch mode: every code in view goes into the cart, borrowed together in one transaction
+    private final BorrowCart cart = new BorrowCart();
+    private MultiQrDecoder multiDecoder;
+    private JCheckBox batchModeBox;
+    private JPanel cartPanel;
+    private DefaultListModel<String> cartListModel;
+    private JButton borrowAllButton;
     
     // Status constants
     private static final String STATUS_NO_QR = "No QR";
@@ -76,13 +78,15 @@ public class QRScannerForm extends JFrame implements Runnable {
             webcam = Webcam.getDefault();
             if (webcam != null) {
                 webcam.setViewSize(WebcamResolution.VGA.getSize());
+                // Asynchronous mode: the webcam's updater thread fires an event for every new frame
+                webcam.open(true);
+                engine = new ScanEngine(new WebcamFrameSource(webcam), QrDecoder.fromSystemProperties(),
+                        ScanEngine.Catalog.database(), this);
+                engine.start();
                 webcamPanel = new WebcamPanel(webcam);
                 webcamPanel.setMirrored(true);
                 webcamPanel.setFPSDisplayed(false);
                 cameraContainer.add(webcamPanel, BorderLayout.CENTER);
-                
-                // Start scanning thread
-                executor.execute(this);
             } else {
                 JLabel noCameraLabel = new JLabel("No camera detected", SwingConstants.CENTER);
                 noCameraLabel.setForeground(Color.WHITE);
@@ -123,6 +127,32 @@ public class QRScannerForm extends JFrame implements Runnable {
         bottomPanel.add(qrInfoPanel);
         bottomPanel.add(Box.createVerticalStrut(10));
         
+        // Cart panel (batch mode only)
+        cartPanel = new JPanel(new BorderLayout(5, 5));
+        cartPanel.setBorder(BorderFactory.createTitledBorder("Cart"));
+        cartPanel.setVisible(false);
+        cartListModel = new DefaultListModel<>();
+        JScrollPane cartScroll = new JScrollPane(new JList<>(cartListModel));
+        cartScroll.setPreferredSize(new Dimension(400, 100));
+        cartPanel.add(cartScroll, BorderLayout.CENTER);
+        
+        borrowAllButton = new JButton("Borrow All (0)");
+        borrowAllButton.setEnabled(false);
+        borrowAllButton.addActionListener(e -> confirmBorrowAll());
+        JButton clearCartButton = new JButton("Clear");
+        clearCartButton.addActionListener(e -> {
+            cart.clear();
+            engine.clearRecentScans();
+            refreshCart();
+        });
+        JPanel cartButtons = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        cartButtons.add(borrowAllButton);
+        cartButtons.add(clearCartButton);
+        cartPanel.add(cartButtons, BorderLayout.SOUTH);
+        
+        bottomPanel.add(cartPanel);
+        bottomPanel.add(Box.createVerticalStrut(10));
+        
         // Button panel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 5));
         
@@ -135,6 +165,11 @@ public class QRScannerForm extends JFrame implements Runnable {
         cancelButton.setPreferredSize(new Dimension(120, 35));
         cancelButton.addActionListener(e -> cancelScanning());
         
+        batchModeBox = new JCheckBox("Batch Mode");
+        batchModeBox.setEnabled(engine != null);
+        batchModeBox.addActionListener(e -> setBatchMode(batchModeBox.isSelected()));
+        
+        buttonPanel.add(batchModeBox);
         buttonPanel.add(borrowButton);
         buttonPanel.add(cancelButton);
         
@@ -155,50 +190,44 @@ public class QRScannerForm extends JFrame implements Runnable {
     }
     
     @Override
-    public void run() {
-        // Continuous QR scanning loop
-        while (scanning.get()) {
-            try {
-                Thread.sleep(100); // Scan every 100ms
-                
-                if (webcam == null || !webcam.isOpen()) {
-                    continue;
-                }
-                
-                BufferedImage image = webcam.getImage();
-                if (image == null) {
-                    updateStatus(STATUS_NO_QR);
-                    continue;
-                }
-                
-                // Try to decode QR code
-                LuminanceSource source = new BufferedImageLuminanceSource(image);
-                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                
-                try {
-                    MultiFormatReader reader = new MultiFormatReader();
-                    Result result = reader.decode(bitmap);
-                    
-                    if (result != null && result.getText() != null && !result.getText().isEmpty()) {
-                        detectedQRContent = result.getText();
-                        scanning.set(false);
-                        handleQRDetected(detectedQRContent);
-                    }
-                } catch (NotFoundException e) {
-                    // No QR code found in this frame
-                    updateStatus(STATUS_NO_QR);
-                } catch (Exception e) {
-                    updateStatus(STATUS_QR_SCAN_FAILED);
-                }
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+    public void onDetected(ScanEngine.Detection detection) {
+        this.detection = detection;
+        handleQRDetected(detection.content(), detection.label(), detection.book());
+    }
+    
+    @Override
+    public void onDetectedMultiple(List<ScanEngine.Detection> detections) {
+        boolean added = false;
+        for (ScanEngine.Detection detection : detections) {
+            int bookId = detection.label().bookId();
+            Book book = detection.book();
+            String label = book == null
+                    ? bookId + " - (not in catalog)"
+                    : bookId + " - " + book.bookName() + (book.borrowed() == 1 ? " (Borrowed)" : "");
+            added |= cart.add(bookId, label);
         }
+        updateStatus(STATUS_QR_DETECTED);
+        if (added) {
+            SwingUtilities.invokeLater(this::refreshCart);
+        }
+    }
+    
+    @Override
+    public void onNoCode() {
+        // No QR code found in this frame
+        updateStatus(STATUS_NO_QR);
+    }
+    
+    @Override
+    public void onReadError(ReaderException ex) {
+        updateStatus(STATUS_QR_SCAN_FAILED);
     }
     
     private void updateStatus(String status) {
+        if (status.equals(lastStatus)) {
+            return;
+        }
+        lastStatus = status;
         SwingUtilities.invokeLater(() -> {
             statusLabel.setText(status);
             updateStatusColor(status);
@@ -221,19 +250,27 @@ public class QRScannerForm extends JFrame implements Runnable {
         }
     }
     
-    private void handleQRDetected(String qrContent) {
+    /**
+     * @param label       The content parsed as a book label, or null if it is not one
+     * @param catalogBook The catalog entry of the label, or null if unknown
+     */
+    private void handleQRDetected(String qrContent, BookLabelCodec.Label label, Book catalogBook) {
         SwingUtilities.invokeLater(() -> {
             updateStatus(STATUS_QR_DETECTED);
             
             // Display QR information
             qrInfoPanel.setVisible(true);
             
-            // Parse QR content and check if it contains book information
-            String displayInfo = parseQRContent(qrContent);
+            // The content was parsed once, on the decode thread
+            String displayInfo = describeQRContent(qrContent, label);
+            if (catalogBook != null) {
+                displayInfo += "\nCatalog: " + catalogBook.bookName()
+                        + (catalogBook.borrowed() == 1 ? " (Borrowed)" : " (Available)");
+            }
             qrInfoLabel.setText("<html>" + displayInfo.replace("\n", "<br>") + "</html>");
             
             // Enable borrow button if book info is detected
-            if (containsBookInfo(qrContent)) {
+            if (label != null) {
                 borrowButton.setEnabled(true);
                 borrowButton.setText("Borrow");
             } else {
@@ -245,19 +282,16 @@ public class QRScannerForm extends JFrame implements Runnable {
         });
     }
     
-    private String parseQRContent(String content) {
+    private static String describeQRContent(String content, BookLabelCodec.Label label) {
         StringBuilder sb = new StringBuilder();
         sb.append("QR Content:\n");
         
-        // Try to parse as structured book data
-        // Expected format: book_id|book_name|other_info
-        String[] parts = content.split("\\|");
-        if (parts.length >= 2) {
-            sb.append("Book ID: ").append(parts[0]).append("\n");
-            sb.append("Book Name: ").append(parts[1]).append("\n");
-            if (parts.length > 2) {
-                sb.append("Additional Info: ").append(parts[2]);
+        if (label != null) {
+            sb.append("Book ID: ").append(label.bookId()).append("\n");
+            if (label.bookName() != null) {
+                sb.append("Book Name: ").append(label.bookName()).append("\n");
             }
+            sb.append("Label Format: ").append(label.format());
         } else {
             sb.append(content);
         }
@@ -265,46 +299,25 @@ public class QRScannerForm extends JFrame implements Runnable {
         return sb.toString();
     }
     
-    /**
-     * Checks if the QR content contains valid book information.
-     * 
-     * Two accepted formats are supported:
-     * 1. Structured format with pipe separator: "book_id|book_name" or "book_id|book_name|additional_info"
-     *    - Both book_id and book_name must be non-empty
-     * 2. Numeric-only book ID: A string containing only digits (e.g., "42")
-     *
-     * @param content The QR code content to validate
-     * @return true if the content contains valid book information, false otherwise
-     */
-    private boolean containsBookInfo(String content) {
-        if (content == null || content.isEmpty()) {
-            return false;
-        }
-        
-        // Check for structured format (book_id|book_name)
-        if (content.contains("|")) {
-            String[] parts = content.split("\\|");
-            return parts.length >= 2 && !parts[0].isEmpty() && !parts[1].isEmpty();
-        }
-        
-        // Check if it's just a book ID (numeric)
-        return content.matches("\\d+");
-    }
-    
     private void confirmBorrow() {
-        if (detectedQRContent == null || detectedQRContent.isEmpty()) {
+        ScanEngine.Detection shown = detection;
+        if (shown == null) {
             JOptionPane.showMessageDialog(this, 
                     "No QR code detected", 
                     "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
-        // Parse book info from QR - handle empty strings and delimiter-only content
-        String[] parts = detectedQRContent.split("\\|", -1);
-        String bookId = (parts.length > 0 && parts[0] != null && !parts[0].trim().isEmpty()) 
-                ? parts[0].trim() : "Unknown";
-        String bookName = (parts.length > 1 && parts[1] != null && !parts[1].trim().isEmpty()) 
-                ? parts[1].trim() : "Unknown";
+        BookLabelCodec.Label label = shown.label();
+        if (label == null) {
+            JOptionPane.showMessageDialog(this, 
+                    "The QR code is not a book label", 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        // Compact labels carry no title: show the catalog's, or the label's for older labels
+        int bookId = label.bookId();
+        String bookName = shown.bookName() != null ? shown.bookName() : "Unknown";
         
         int confirm = JOptionPane.showConfirmDialog(this,
                 "Confirm borrowing:\n\nBook ID: " + bookId + "\nBook Name: " + bookName + 
@@ -314,30 +327,119 @@ public class QRScannerForm extends JFrame implements Runnable {
                 JOptionPane.QUESTION_MESSAGE);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            // Log the borrowing (in real implementation, update database)
-            JOptionPane.showMessageDialog(this,
-                    "Book '" + bookName + "' has been borrowed successfully!\n" +
-                    "Borrower: " + currentUser.name,
-                    "Borrow Successful",
-                    JOptionPane.INFORMATION_MESSAGE);
-            
-            closeAndReturn();
+            // One conditional update decides the outcome, even with several stations scanning the same copy
+            borrowButton.setEnabled(false);
+            cancelButton.setEnabled(false);
+            AsyncDatabase.onEdt(AsyncDatabase.supply(() -> engine.borrowBook(bookId, currentUser.name)),
+                    borrowed -> {
+                        cancelButton.setEnabled(true);
+                        if (borrowed) {
+                            JOptionPane.showMessageDialog(this,
+                                    "Book '" + bookName + "' has been borrowed successfully!\n" +
+                                    "Borrower: " + currentUser.name,
+                                    "Borrow Successful",
+                                    JOptionPane.INFORMATION_MESSAGE);
+                            closeAndReturn();
+                        } else {
+                            JOptionPane.showMessageDialog(this,
+                                    "Book '" + bookName + "' is not available (already borrowed or not in the catalog).",
+                                    "Borrow Failed",
+                                    JOptionPane.WARNING_MESSAGE);
+                            resetScanning();
+                        }
+                    },
+                    error -> {
+                        cancelButton.setEnabled(true);
+                        JOptionPane.showMessageDialog(this,
+                                "Failed to borrow book: " + error.getMessage(),
+                                "Database Error", JOptionPane.ERROR_MESSAGE);
+                        resetScanning();
+                    });
         } else {
             // Resume scanning
             resetScanning();
         }
     }
     
+    private void setBatchMode(boolean batch) {
+        if (batch && multiDecoder == null) {
+            multiDecoder = new MultiQrDecoder();
+        }
+        engine.setBatchDecoder(batch ? multiDecoder : null);
+        cart.clear();
+        engine.clearRecentScans();
+        refreshCart();
+        cartPanel.setVisible(batch);
+        borrowButton.setVisible(!batch);
+        resetScanning();
+        pack();
+    }
+    
+    private void refreshCart() {
+        cartListModel.clear();
+        for (String label : cart.getLabels()) {
+            cartListModel.addElement(label);
+        }
+        borrowAllButton.setText("Borrow All (" + cart.size() + ")");
+        borrowAllButton.setEnabled(!cart.isEmpty());
+    }
+    
+    private void confirmBorrowAll() {
+        List<Integer> bookIds = cart.getBookIds();
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Borrow " + bookIds.size() + " books for " + currentUser.name + "?\n\n"
+                        + String.join("\n", cart.getLabels()),
+                "Confirm Borrow",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE);
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+        
+        // The whole cart goes through one transaction
+        borrowAllButton.setEnabled(false);
+        batchModeBox.setEnabled(false);
+        AsyncDatabase.onEdt(AsyncDatabase.supply(() -> engine.borrowBooks(bookIds, currentUser.name)),
+                borrowed -> {
+                    List<String> unavailable = new ArrayList<>();
+                    int count = 0;
+                    for (int i = 0; i < borrowed.length; i++) {
+                        if (borrowed[i]) {
+                            count++;
+                        } else {
+                            unavailable.add(cart.getLabel(bookIds.get(i)));
+                        }
+                    }
+                    String message = count + " of " + bookIds.size() + " books borrowed by " + currentUser.name + ".";
+                    if (!unavailable.isEmpty()) {
+                        message += "\n\nNot available:\n" + String.join("\n", unavailable);
+                    }
+                    JOptionPane.showMessageDialog(this, message, "Borrow Complete",
+                            unavailable.isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                    cart.clear();
+                    refreshCart();
+                    batchModeBox.setEnabled(true);
+                },
+                error -> {
+                    JOptionPane.showMessageDialog(this,
+                            "Failed to borrow books: " + error.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    refreshCart();
+                    batchModeBox.setEnabled(true);
+                });
+    }
+    
     private void resetScanning() {
-        synchronized (scanningLock) {
-            detectedQRContent = null;
-            qrInfoPanel.setVisible(false);
-            borrowButton.setEnabled(false);
-            scanning.set(true);
-            updateStatus(STATUS_SCANNING);
-            // Submit a new scanning task using the single-threaded executor
-            // which ensures proper task queuing and prevents concurrent scanning threads
-            executor.execute(this);
+        detection = null;
+        qrInfoPanel.setVisible(false);
+        borrowButton.setEnabled(false);
+        updateStatus(STATUS_SCANNING);
+        if (engine != null) {
+            // The handled code counts as seen from now on
+            engine.resume();
         }
     }
     
@@ -346,24 +448,19 @@ public class QRScannerForm extends JFrame implements Runnable {
     }
     
     private void closeAndReturn() {
-        scanning.set(false);
+        // Stop decoding before the webcam goes away
+        if (engine != null) {
+            engine.close();
+        }
+        if (multiDecoder != null) {
+            multiDecoder.close();
+        }
         
         // Close webcam
         if (webcam != null && webcam.isOpen()) {
             webcam.close();
         }
         
-        // Shutdown executor service and wait for termination
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
-        
         dispose();
         
         // Return to main form
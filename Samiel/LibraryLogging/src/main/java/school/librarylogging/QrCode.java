@@ -1,20 +1,42 @@
 package school.librarylogging;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
 
 public class QrCode {
+
+    // Rendered codes shared by every QrCode, sized by -Dlibrarylogging.qr.imageCacheBytes and .matrixCacheBytes
+    private static final QrImageCache CACHE = new QrImageCache(
+            Long.getLong("librarylogging.qr.imageCacheBytes", 16L << 20),
+            Long.getLong("librarylogging.qr.matrixCacheBytes", 4L << 20));
+
+    static {
+        Metrics.gauge("qr.cache.hitRate", CACHE::getHitRate);
+        Metrics.gauge("qr.cache.images", CACHE::getImageCount);
+        Metrics.gauge("qr.cache.imageBytes", CACHE::getImageBytes);
+        Metrics.gauge("qr.cache.matrices", CACHE::getMatrixCount);
+        Metrics.gauge("qr.cache.misses", CACHE::getMissCount);
+        Metrics.gauge("qr.cache.evictions", () -> CACHE.getImageEvictionCount() + CACHE.getMatrixEvictionCount());
+    }
+
     // Class for handing of QR Codes
     public void QrReader(int width, int height, String filePath) throws WriterException, IOException, NotFoundException {
         if(width == 0 || height == 0){
@@ -25,19 +47,160 @@ public class QrCode {
         BitMatrix bit = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, width, height);
     }
 
+    /**
+     * @return the text encoded on a book's label, in the compact {@link BookLabelCodec} format
+     */
+    public static String bookPayload(Book book) {
+        return BookLabelCodec.encode(book.bookId());
+    }
+
+    /**
+     * Renders a QR code, from the cache when the same payload was rendered before.
+     * The image may be shared with other callers and must not be drawn on.
+     *
+     * @param size Width and height in pixels; 250 if not positive
+     */
     public BufferedImage createQrImage(String contents, int size) throws WriterException {
         if (contents == null || contents.isBlank()) {
             throw new IllegalArgumentException("QR contents cannot be empty");
         }
         int targetSize = size > 0 ? size : 250;
-        BitMatrix matrix = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, targetSize, targetSize);
-        return MatrixToImageWriter.toBufferedImage(matrix);
+        QrImageCache.Key key = new QrImageCache.Key(contents, targetSize);
+        BufferedImage image = CACHE.getImage(key);
+        if (image != null) {
+            return image;
+        }
+        image = render(modules(contents), targetSize);
+        CACHE.putImage(key, image);
+        return image;
+    }
+
+    /**
+     * Renders a QR code without looking in or filling the cache, for bulk runs such as label sheets whose
+     * codes are each drawn once and would only evict the codes the dialogs reuse.
+     *
+     * @param size Width and height in pixels; 250 if not positive
+     */
+    static BufferedImage renderUncached(String contents, int size) throws WriterException {
+        if (contents == null || contents.isBlank()) {
+            throw new IllegalArgumentException("QR contents cannot be empty");
+        }
+        return render(encode(contents), size > 0 ? size : 250);
+    }
+
+    /**
+     * @return the code of the contents at one pixel per module, quiet zone included, from the cache if it is there
+     */
+    private static BitMatrix modules(String contents) throws WriterException {
+        BitMatrix modules = CACHE.getMatrix(contents);
+        if (modules == null) {
+            modules = encode(contents);
+            CACHE.putMatrix(contents, modules);
+        }
+        return modules;
+    }
+
+    private static BitMatrix encode(String contents) throws WriterException {
+        // Size 0 encodes one pixel per module; scaled up when rendered
+        return new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, 0, 0, hints(contents));
     }
 
+    /**
+     * Compact labels fit the smallest symbol at error correction level Q, which tolerates a quarter of it being
+     * smudged or out of focus; anything else keeps ZXing's default level L so its symbol stays as small as possible.
+     */
+    private static Map<EncodeHintType, Object> hints(String contents) {
+        if (BookLabelCodec.isCompact(contents)) {
+            return Map.of(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.Q);
+        }
+        return Map.of();
+    }
+
+    /**
+     * Scales a one-pixel-per-module matrix onto a black and white image the way {@link QRCodeWriter} scales
+     * to a requested size: whole pixels per module, centered, with the remainder as extra margin.
+     */
+    static BufferedImage render(BitMatrix modules, int size) {
+        int codeSize = modules.getWidth();
+        int outputSize = Math.max(size, codeSize);
+        int scale = outputSize / codeSize;
+        int padding = (outputSize - codeSize * scale) / 2;
+
+        BufferedImage image = new BufferedImage(outputSize, outputSize, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (outputSize + 7) / 8;
+        // Pixel value 1 is white in the default black and white palette
+        Arrays.fill(pixels, (byte) 0xFF);
+        for (int y = 0; y < codeSize; y++) {
+            int firstRow = (padding + y * scale) * stride;
+            for (int x = 0; x < codeSize; x++) {
+                if (modules.get(x, y)) {
+                    for (int column = padding + x * scale, end = column + scale; column < end; column++) {
+                        pixels[firstRow + (column >> 3)] &= (byte) ~(0x80 >>> (column & 7));
+                    }
+                }
+            }
+            // Every pixel row of a module row is the same
+            for (int row = 1; row < scale; row++) {
+                System.arraycopy(pixels, firstRow, pixels, firstRow + row * stride, stride);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @return the cache shared by every QrCode, for its statistics
+     */
+    public static QrImageCache getCache() {
+        return CACHE;
+    }
+
+    /**
+     * Saves an image as PNG; black and white images, as {@link #createQrImage} renders them, are written
+     * as 1-bit PNG by a {@link PngEncoder}.
+     */
     public void saveQrImage(BufferedImage image, Path destination) throws IOException {
         if (image == null) {
             throw new IllegalStateException("QR image is not generated");
         }
+        if (!PngEncoder.isBilevel(image)) {
+            ImageIO.write(image, "PNG", prepare(destination).toFile());
+            return;
+        }
+        try (FileChannel channel = open(prepare(destination)); PngEncoder encoder = new PngEncoder()) {
+            encoder.write(image, channel);
+        }
+    }
+
+    /**
+     * Encodes a QR code straight to a 1-bit PNG file, without rendering an image.
+     *
+     * @param size Width and height in pixels; 250 if not positive
+     */
+    public void saveQrCode(String contents, int size, Path destination) throws WriterException, IOException {
+        if (contents == null || contents.isBlank()) {
+            throw new IllegalArgumentException("QR contents cannot be empty");
+        }
+        BitMatrix modules = modules(contents);
+        try (FileChannel channel = open(prepare(destination)); PngEncoder encoder = new PngEncoder()) {
+            encoder.write(modules, size > 0 ? size : 250, channel);
+        }
+    }
+
+    /**
+     * Encodes a QR code as a 1-bit PNG with an encoder the caller reuses, e.g. for bulk export.
+     *
+     * @param size Width and height in pixels; 250 if not positive
+     */
+    public void writeQrCode(String contents, int size, PngEncoder encoder, WritableByteChannel channel)
+            throws WriterException, IOException {
+        if (contents == null || contents.isBlank()) {
+            throw new IllegalArgumentException("QR contents cannot be empty");
+        }
+        encoder.write(modules(contents), size > 0 ? size : 250, channel);
+    }
+
+    private static Path prepare(Path destination) throws IOException {
         if (destination == null) {
             throw new IllegalArgumentException("Destination path cannot be null");
         }
@@ -45,6 +208,11 @@ public class QrCode {
         if (parent != null) {
             Files.createDirectories(parent);
         }
-        ImageIO.write(image, "PNG", destination.toFile());
+        return destination;
+    }
+
+    private static FileChannel open(Path destination) throws IOException {
+        return FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
     }
 }
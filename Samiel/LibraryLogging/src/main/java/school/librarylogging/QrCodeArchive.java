@@ -0,0 +1,108 @@
+package school.librarylogging;
+
+import com.google.zxing.WriterException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes many QR codes as 1-bit PNGs into one zip file, for bulk export.
+ *
+ * Each code is encoded by one reused {@link PngEncoder} into a reused buffer and stored uncompressed, since a
+ * PNG is deflated already. Not thread-safe.
+ */
+public class QrCodeArchive implements AutoCloseable {
+
+    /**
+     * Exposes the buffer so an entry is checksummed and copied without another array copy.
+     */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+        EntryBuffer() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final QrCode qrCode;
+    private final int size;
+    private final ZipOutputStream zip;
+    private final PngEncoder encoder = new PngEncoder();
+    private final EntryBuffer entry = new EntryBuffer();
+    private final WritableByteChannel entryChannel = Channels.newChannel(entry);
+    private final CRC32 crc = new CRC32();
+    private int count;
+    private long bytes;
+
+    /**
+     * @param destination Zip file, replaced if it exists
+     * @param size        Width and height of every code in pixels; 250 if not positive
+     */
+    public QrCodeArchive(QrCode qrCode, Path destination, int size) throws IOException {
+        Path parent = destination.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.qrCode = qrCode;
+        this.size = size;
+        this.zip = new ZipOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+    }
+
+    /**
+     * Adds a code as {@code name}.
+     */
+    public void add(String name, String contents) throws WriterException, IOException {
+        entry.reset();
+        qrCode.writeQrCode(contents, size, encoder, entryChannel);
+        crc.reset();
+        crc.update(entry.buffer(), 0, entry.size());
+
+        ZipEntry zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(entry.size());
+        zipEntry.setCompressedSize(entry.size());
+        zipEntry.setCrc(crc.getValue());
+        zip.putNextEntry(zipEntry);
+        zip.write(entry.buffer(), 0, entry.size());
+        zip.closeEntry();
+        count++;
+        bytes += entry.size();
+    }
+
+    /**
+     * @return codes added so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return total size of the PNGs added so far
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            zip.close();
+        } finally {
+            encoder.close();
+        }
+    }
+}
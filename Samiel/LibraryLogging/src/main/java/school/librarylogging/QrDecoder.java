@@ -0,0 +1,463 @@
+package school.librarylogging;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes camera frames with one reused reader: a {@link QRCodeReader} when only QR codes are wanted (the
+ * default), otherwise a {@link MultiFormatReader}.
+ *
+ * The reader's hints are set once, so ZXing only tries the formats we print instead of every 1D and 2D
+ * format on every frame. The QR reader also reports a code it located but could not read as a
+ * {@link ReaderException}; {@link MultiFormatReader} reports every failed read as no code, so with other
+ * formats configured, read errors are never counted. A decoder is confined to the thread that scans:
+ * create one per scanning thread. Only the metrics may be read from other threads.
+ *
+ * Camera frames are decoded in up to three passes, cheapest first, stopping at the first hit:
+ * <ol>
+ *   <li>the region where a code was last seen (found or partly detected), expanded by a margin;</li>
+ *   <li>a center region of interest at reduced resolution, where a label held up to the desk camera usually is;</li>
+ *   <li>the full frame at full resolution.</li>
+ * </ol>
+ * Result points are mapped back to full-frame coordinates whatever pass found the code.
+ */
+public class QrDecoder {
+
+    /**
+     * How hard the reader looks for a code in a frame.
+     */
+    public enum Mode {
+        /** Default ZXing search, good enough for a code held up to the camera. */
+        FAST,
+        /** Spends more time per frame on skewed, small or poorly lit codes. */
+        TRY_HARDER,
+        /** Assumes the image is just the code with a quiet zone, e.g. a generated label; not for camera frames. */
+        PURE_BARCODE
+    }
+
+    // Exactly one of the two is set
+    private final QRCodeReader qrReader;
+    private final MultiFormatReader reader;
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    // One plane per pass size, reused from frame to frame
+    private final LuminancePlanes planes = new LuminancePlanes(1);
+    private final Mode mode;
+    private final Set<BarcodeFormat> formats;
+
+    // Metrics
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Histogram decodeMicros = new Histogram("us");
+
+    // The same, for every decoder in the process
+    static final Metrics.Counter FRAMES_DECODED = Metrics.counter("scan.decode.frames");
+    static final Metrics.Counter CODES_FOUND = Metrics.counter("scan.decode.hits");
+    private static final Metrics.Counter READ_ERRORS = Metrics.counter("scan.decode.errors");
+    static final Histogram DECODE_TIME = Metrics.histogram("scan.decode.time", "us");
+
+    static {
+        Metrics.gauge("scan.decode.hitRate", () -> Metrics.ratio(CODES_FOUND.getCount(), FRAMES_DECODED.getCount()));
+    }
+
+    public static final double DEFAULT_ROI_FRACTION = 0.6;
+    public static final int DEFAULT_ROI_SCALE = 2;
+    // A tracked region is forgotten when no code has been seen in it for this long
+    private static final long TRACK_NANOS = 1_000_000_000L;
+    private static final int MIN_TRACKED_SIZE = 96;
+
+    private final boolean multiPass;
+    private final double roiFraction;
+    private final int roiScale;
+
+    // Finder pattern candidates ZXing reported while decoding the last frame
+    private int lastFramePoints;
+    // Bounding box of the points reported during the current pass, in pass coordinates
+    private float pointsMinX, pointsMinY, pointsMaxX, pointsMaxY;
+    private int passPoints;
+    // Region where a code was last seen, in frame coordinates, or null
+    private Region tracked;
+    private long trackedAt;
+
+    private final AtomicLong trackedHits = new AtomicLong();
+    private final AtomicLong centerHits = new AtomicLong();
+    private final AtomicLong fullFrameHits = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+
+    public QrDecoder() {
+        this(Mode.FAST, EnumSet.of(BarcodeFormat.QR_CODE));
+    }
+
+    public QrDecoder(Mode mode, Set<BarcodeFormat> formats) {
+        this(mode, formats, true, DEFAULT_ROI_FRACTION, DEFAULT_ROI_SCALE);
+    }
+
+    /**
+     * @param mode        Search effort
+     * @param formats     Barcode formats to look for
+     * @param multiPass   Whether camera frames are decoded region first; always off for {@link Mode#PURE_BARCODE}
+     * @param roiFraction Width and height of the center region as a fraction of the frame
+     * @param roiScale    Downscale factor of the center region (1 for full resolution)
+     */
+    public QrDecoder(Mode mode, Set<BarcodeFormat> formats, boolean multiPass, double roiFraction, int roiScale) {
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("At least one barcode format is required");
+        }
+        if (roiFraction <= 0 || roiFraction > 1 || roiScale < 1) {
+            throw new IllegalArgumentException("Invalid region of interest: " + roiFraction + " at 1/" + roiScale);
+        }
+        this.mode = mode;
+        this.formats = EnumSet.copyOf(formats);
+        this.multiPass = multiPass && mode != Mode.PURE_BARCODE;
+        this.roiFraction = roiFraction;
+        this.roiScale = roiScale;
+
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, this.formats);
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, (ResultPointCallback) this::foundPoint);
+        if (mode == Mode.TRY_HARDER) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        } else if (mode == Mode.PURE_BARCODE) {
+            hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        }
+        if (this.formats.equals(EnumSet.of(BarcodeFormat.QR_CODE))) {
+            qrReader = new QRCodeReader();
+            reader = null;
+        } else {
+            qrReader = null;
+            reader = new MultiFormatReader();
+            reader.setHints(hints);
+        }
+    }
+
+    /**
+     * Runs the reader once over the bitmap.
+     *
+     * @throws NotFoundException if there is no code in the bitmap
+     * @throws ReaderException if a QR code was located but its checksum or format did not validate
+     */
+    private Result read(BinaryBitmap bitmap) throws ReaderException {
+        if (qrReader != null) {
+            return qrReader.decode(bitmap, hints);
+        }
+        return reader.decodeWithState(bitmap);
+    }
+
+    private void resetReader() {
+        if (qrReader != null) {
+            qrReader.reset();
+        } else {
+            reader.reset();
+        }
+    }
+
+    /**
+     * Creates a decoder configured by {@code -Dlibrarylogging.scanner.mode} (FAST, TRY_HARDER or PURE_BARCODE),
+     * {@code -Dlibrarylogging.scanner.formats} (comma separated ZXing format names, default QR_CODE),
+     * {@code -Dlibrarylogging.scanner.multiPass} (default true), {@code -Dlibrarylogging.scanner.roi}
+     * (center region fraction, default 0.6) and {@code -Dlibrarylogging.scanner.roiScale} (default 2).
+     *
+     * @throws IllegalArgumentException if a property names an unknown mode or format
+     */
+    public static QrDecoder fromSystemProperties() {
+        Mode mode = Mode.valueOf(System.getProperty("librarylogging.scanner.mode", "FAST").trim().toUpperCase(Locale.ROOT));
+        Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+        for (String name : System.getProperty("librarylogging.scanner.formats", "QR_CODE").split(",")) {
+            if (!name.isBlank()) {
+                formats.add(BarcodeFormat.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        boolean multiPass = Boolean.parseBoolean(System.getProperty("librarylogging.scanner.multiPass", "true"));
+        double roiFraction = Double.parseDouble(System.getProperty("librarylogging.scanner.roi", String.valueOf(DEFAULT_ROI_FRACTION)));
+        int roiScale = Integer.getInteger("librarylogging.scanner.roiScale", DEFAULT_ROI_SCALE);
+        return new QrDecoder(mode, formats, multiPass, roiFraction, roiScale);
+    }
+
+    private void foundPoint(ResultPoint point) {
+        lastFramePoints++;
+        if (passPoints++ == 0) {
+            pointsMinX = pointsMaxX = point.getX();
+            pointsMinY = pointsMaxY = point.getY();
+        } else {
+            pointsMinX = Math.min(pointsMinX, point.getX());
+            pointsMaxX = Math.max(pointsMaxX, point.getX());
+            pointsMinY = Math.min(pointsMinY, point.getY());
+            pointsMaxY = Math.max(pointsMaxY, point.getY());
+        }
+    }
+
+    /**
+     * Part of a frame, read every {@code scale} pixels.
+     */
+    private record Region(int left, int top, int width, int height, int scale) {
+        Region clampTo(int frameWidth, int frameHeight) {
+            int x = Math.max(0, left);
+            int y = Math.max(0, top);
+            return new Region(x, y, Math.min(frameWidth, left + width) - x, Math.min(frameHeight, top + height) - y, scale);
+        }
+    }
+
+    /**
+     * Looks for a code in a camera frame, region first when multi-pass decoding is on.
+     *
+     * @return the decoded result with points in frame coordinates, or null if the frame holds no code
+     * @throws ReaderException if a code was located but its checksum or format did not validate in any pass
+     */
+    public Result decode(BufferedImage image) throws ReaderException {
+        if (!multiPass) {
+            byte[] plane = planes.read(image, 0, 0, image.getWidth(), image.getHeight(), 1);
+            try {
+                return decode(new PlaneLuminanceSource(plane, image.getWidth(), image.getHeight()));
+            } finally {
+                planes.release(plane);
+            }
+        }
+        long start = System.nanoTime();
+        lastFramePoints = 0;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ReaderException failure = null;
+        try {
+            if (tracked != null && start - trackedAt < TRACK_NANOS) {
+                try {
+                    Result result = decodeRegion(image, tracked, start);
+                    if (result != null) {
+                        trackedHits.incrementAndGet();
+                        return result;
+                    }
+                } catch (ReaderException ex) {
+                    failure = ex;
+                }
+            }
+
+            int roiWidth = (int) (width * roiFraction);
+            int roiHeight = (int) (height * roiFraction);
+            if (roiWidth < width || roiHeight < height || roiScale > 1) {
+                Region center = new Region((width - roiWidth) / 2, (height - roiHeight) / 2, roiWidth, roiHeight, roiScale);
+                try {
+                    Result result = decodeRegion(image, center, start);
+                    if (result != null) {
+                        centerHits.incrementAndGet();
+                        return result;
+                    }
+                } catch (ReaderException ex) {
+                    failure = ex;
+                }
+            }
+
+            try {
+                Result result = decodeRegion(image, new Region(0, 0, width, height, 1), start);
+                if (result != null) {
+                    fullFrameHits.incrementAndGet();
+                    return result;
+                }
+            } catch (ReaderException ex) {
+                failure = ex;
+            }
+            if (failure != null) {
+                errors.incrementAndGet();
+                READ_ERRORS.increment();
+                throw failure;
+            }
+            return null;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000;
+            frames.incrementAndGet();
+            decodeMicros.record(micros);
+            FRAMES_DECODED.increment();
+            DECODE_TIME.record(micros);
+        }
+    }
+
+    /**
+     * Runs one pass over a region of the frame and updates the tracked region from what it saw.
+     *
+     * @return the result with points mapped to frame coordinates, or null if the pass found no code
+     */
+    private Result decodeRegion(BufferedImage image, Region region, long now) throws ReaderException {
+        passes.incrementAndGet();
+        int scaledWidth = region.width() / region.scale();
+        int scaledHeight = region.height() / region.scale();
+        byte[] plane = planes.read(image, region.left(), region.top(), scaledWidth, scaledHeight, region.scale());
+        LuminanceSource source = new PlaneLuminanceSource(plane, scaledWidth, scaledHeight);
+
+        passPoints = 0;
+        try {
+            Result result = read(new BinaryBitmap(new HybridBinarizer(source)));
+            decoded.incrementAndGet();
+            CODES_FOUND.increment();
+            lastFramePoints = 0;
+            Result mapped = mapToFrame(result, region);
+            track(mapped.getResultPoints(), image, now);
+            return mapped;
+        } catch (ReaderException ex) {
+            if (passPoints >= 2) {
+                // Part of a code is in view: look here first on the next frames
+                track(new ResultPoint[]{
+                        toFrame(pointsMinX, pointsMinY, region), toFrame(pointsMaxX, pointsMaxY, region)}, image, now);
+            }
+            if (ex instanceof NotFoundException) {
+                return null;
+            }
+            throw ex;
+        } finally {
+            resetReader();
+            planes.release(plane);
+        }
+    }
+
+    private static ResultPoint toFrame(float x, float y, Region region) {
+        return new ResultPoint(region.left() + x * region.scale(), region.top() + y * region.scale());
+    }
+
+    private static Result mapToFrame(Result result, Region region) {
+        if (region.left() == 0 && region.top() == 0 && region.scale() == 1) {
+            return result;
+        }
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] mapped = new ResultPoint[points == null ? 0 : points.length];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = points[i] == null ? null : toFrame(points[i].getX(), points[i].getY(), region);
+        }
+        Result frameResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), mapped,
+                result.getBarcodeFormat(), result.getTimestamp());
+        if (result.getResultMetadata() != null) {
+            frameResult.putAllMetadata(result.getResultMetadata());
+        }
+        return frameResult;
+    }
+
+    /**
+     * Remembers the bounding box of the points, grown by half its size on every side.
+     */
+    private void track(ResultPoint[] points, BufferedImage image, long now) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            if (point != null) {
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+        if (minX > maxX) {
+            return;
+        }
+        int size = Math.max(MIN_TRACKED_SIZE, (int) (Math.max(maxX - minX, maxY - minY) * 2));
+        int centerX = (int) ((minX + maxX) / 2);
+        int centerY = (int) ((minY + maxY) / 2);
+        Region region = new Region(centerX - size / 2, centerY - size / 2, size, size, 1)
+                .clampTo(image.getWidth(), image.getHeight());
+        if (region.width() > 0 && region.height() > 0) {
+            tracked = region;
+            trackedAt = now;
+        }
+    }
+
+    /**
+     * Looks for a code in one frame.
+     *
+     * @return the decoded result, or null if the frame holds no code
+     * @throws ReaderException if a code was located but its checksum or format did not validate
+     */
+    public Result decode(LuminanceSource source) throws ReaderException {
+        long start = System.nanoTime();
+        lastFramePoints = 0;
+        try {
+            Result result = read(new BinaryBitmap(new HybridBinarizer(source)));
+            decoded.incrementAndGet();
+            CODES_FOUND.increment();
+            lastFramePoints = 0;
+            return result;
+        } catch (NotFoundException ex) {
+            return null;
+        } catch (ReaderException ex) {
+            errors.incrementAndGet();
+            READ_ERRORS.increment();
+            throw ex;
+        } finally {
+            resetReader();
+            long micros = (System.nanoTime() - start) / 1000;
+            frames.incrementAndGet();
+            decodeMicros.record(micros);
+            FRAMES_DECODED.increment();
+            DECODE_TIME.record(micros);
+        }
+    }
+
+    /**
+     * @return true if the last frame held finder patterns but no readable code, typically a code
+     *         partly in view or out of focus that the next frames are likely to read
+     */
+    public boolean isPartialDetection() {
+        return lastFramePoints >= 2;
+    }
+
+    /**
+     * @return codes found in the tracked region, the center region and the full frame pass respectively
+     */
+    public long[] getPassHits() {
+        return new long[]{trackedHits.get(), centerHits.get(), fullFrameHits.get()};
+    }
+
+    /**
+     * @return decode passes run, across all frames
+     */
+    public long getPassCount() {
+        return passes.get();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Set<BarcodeFormat> getFormats() {
+        return EnumSet.copyOf(formats);
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getDecodedCount() {
+        return decoded.get();
+    }
+
+    /**
+     * @return frames in which a code was found but could not be read
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return decode time per frame in microseconds
+     */
+    public Histogram getDecodeTime() {
+        return decodeMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QrDecoder[mode=%s, formats=%s, frames=%d, decoded=%d (tracked=%d, center=%d, full=%d), passes=%d, errors=%d, decode{%s}, %s]",
+                mode, formats, getFrameCount(), getDecodedCount(), trackedHits.get(), centerHits.get(), fullFrameHits.get(),
+                getPassCount(), getErrorCount(), decodeMicros, planes);
+    }
+}
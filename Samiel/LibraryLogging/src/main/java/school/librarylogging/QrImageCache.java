@@ -0,0 +1,181 @@
+package school.librarylogging;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of QR codes for {@link QrCode#createQrImage}, least recently used entries evicted first, bounded by
+ * the memory they take rather than by their number.
+ *
+ * Two tiers: rendered images keyed by payload and size, and the encoded {@link BitMatrix} of every payload at
+ * one pixel per module, a few hundred bytes each. An image missing from the first tier is rendered from its
+ * matrix at any size without re-encoding the payload. A matrix tier of 0 bytes turns it off.
+ *
+ * Cached images are shared: callers must not draw on them.
+ */
+public class QrImageCache {
+
+    /**
+     * Cache key: the encoded text and the requested image size.
+     */
+    public record Key(String payload, int size) {
+    }
+
+    private final long maxImageBytes;
+    private final long maxMatrixBytes;
+    private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, BitMatrix> matrices = new LinkedHashMap<>(256, 0.75f, true);
+    private long imageBytes;
+    private long matrixBytes;
+
+    // Metrics
+    private final AtomicLong imageHits = new AtomicLong();
+    private final AtomicLong matrixHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong imageEvictions = new AtomicLong();
+    private final AtomicLong matrixEvictions = new AtomicLong();
+
+    /**
+     * @param maxImageBytes  Memory for rendered images
+     * @param maxMatrixBytes Memory for encoded matrices, 0 to keep none
+     */
+    public QrImageCache(long maxImageBytes, long maxMatrixBytes) {
+        this.maxImageBytes = maxImageBytes;
+        this.maxMatrixBytes = maxMatrixBytes;
+    }
+
+    /**
+     * @return the cached image, or null; counts a hit only when found
+     */
+    public synchronized BufferedImage getImage(Key key) {
+        BufferedImage image = images.get(key);
+        if (image != null) {
+            imageHits.incrementAndGet();
+        }
+        return image;
+    }
+
+    /**
+     * Looks up the one-pixel-per-module matrix of a payload whose image was not cached.
+     *
+     * @return the cached matrix, or null; a null counts as a miss
+     */
+    public synchronized BitMatrix getMatrix(String payload) {
+        BitMatrix matrix = matrices.get(payload);
+        if (matrix != null) {
+            matrixHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return matrix;
+    }
+
+    public void putImage(Key key, BufferedImage image) {
+        long weight = weigh(image);
+        synchronized (this) {
+            if (weight > maxImageBytes) {
+                return;
+            }
+            BufferedImage previous = images.put(key, image);
+            imageBytes += weight - (previous == null ? 0 : weigh(previous));
+            Iterator<BufferedImage> eldest = images.values().iterator();
+            while (imageBytes > maxImageBytes) {
+                imageBytes -= weigh(eldest.next());
+                eldest.remove();
+                imageEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void putMatrix(String payload, BitMatrix matrix) {
+        long weight = weigh(matrix);
+        synchronized (this) {
+            if (weight > maxMatrixBytes) {
+                return;
+            }
+            BitMatrix previous = matrices.put(payload, matrix);
+            matrixBytes += weight - (previous == null ? 0 : weigh(previous));
+            Iterator<BitMatrix> eldest = matrices.values().iterator();
+            while (matrixBytes > maxMatrixBytes) {
+                matrixBytes -= weigh(eldest.next());
+                eldest.remove();
+                matrixEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        images.clear();
+        matrices.clear();
+        imageBytes = 0;
+        matrixBytes = 0;
+    }
+
+    private static long weigh(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static long weigh(BitMatrix matrix) {
+        return (long) matrix.getRowSize() * matrix.getHeight() * Integer.BYTES;
+    }
+
+    public synchronized int getImageCount() {
+        return images.size();
+    }
+
+    public synchronized int getMatrixCount() {
+        return matrices.size();
+    }
+
+    public synchronized long getImageBytes() {
+        return imageBytes;
+    }
+
+    public synchronized long getMatrixBytes() {
+        return matrixBytes;
+    }
+
+    public long getImageHitCount() {
+        return imageHits.get();
+    }
+
+    /**
+     * @return lookups that found no image but a matrix, so skipped encoding
+     */
+    public long getMatrixHitCount() {
+        return matrixHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getImageEvictionCount() {
+        return imageEvictions.get();
+    }
+
+    public long getMatrixEvictionCount() {
+        return matrixEvictions.get();
+    }
+
+    public double getHitRate() {
+        long hits = imageHits.get() + matrixHits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QrImageCache[images=%d (%d/%d KB), matrices=%d (%d/%d KB), imageHits=%d, matrixHits=%d, misses=%d, hitRate=%.1f%%, evictions=%d/%d]",
+                getImageCount(), getImageBytes() / 1024, maxImageBytes / 1024,
+                getMatrixCount(), getMatrixBytes() / 1024, maxMatrixBytes / 1024,
+                getImageHitCount(), getMatrixHitCount(), getMissCount(), getHitRate() * 100,
+                getImageEvictionCount(), getMatrixEvictionCount());
+    }
+}
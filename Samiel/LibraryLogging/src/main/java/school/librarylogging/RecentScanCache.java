@@ -0,0 +1,135 @@
+package school.librarylogging;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived memory of the payloads a scanning station has just seen, used to drop repeat detections
+ * of a label that is still in front of the camera before they are parsed and looked up.
+ *
+ * A payload counts as a repeat while it keeps being seen: every sighting within the TTL extends it, so a
+ * label lying under the camera stays suppressed, and is reported again once it has been out of view for
+ * the TTL. The least recently seen payloads are evicted beyond the capacity.
+ */
+public class RecentScanCache {
+
+    public static final long DEFAULT_TTL_MS = 3000;
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Long> lastSeen;
+
+    // Metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Creates a cache sized by {@code -Dlibrarylogging.scanner.debounceMs} and
+     * {@code -Dlibrarylogging.scanner.debounceCapacity}.
+     */
+    public RecentScanCache() {
+        this(Integer.getInteger("librarylogging.scanner.debounceCapacity", DEFAULT_CAPACITY),
+                Long.getLong("librarylogging.scanner.debounceMs", DEFAULT_TTL_MS));
+    }
+
+    /**
+     * @param capacity  Maximum number of remembered payloads
+     * @param ttlMillis Time a payload must be out of view before it is reported again
+     */
+    public RecentScanCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.lastSeen = new LinkedHashMap<>(Math.min(capacity, 256), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > RecentScanCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Records a sighting of the payload.
+     *
+     * @return true if it was already seen within the TTL and should be ignored
+     */
+    public boolean isRepeat(String payload) {
+        long now = System.nanoTime();
+        synchronized (lastSeen) {
+            Long previous = lastSeen.put(payload, now);
+            if (previous != null && now - previous <= ttlNanos) {
+                hits.incrementAndGet();
+                return true;
+            }
+            if (previous != null) {
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Restarts the TTL of a payload without counting a sighting, e.g. when scanning resumes after a
+     * detection was handled and the label may still be in view.
+     */
+    public void touch(String payload) {
+        long now = System.nanoTime();
+        synchronized (lastSeen) {
+            lastSeen.put(payload, now);
+        }
+    }
+
+    /**
+     * Forgets a payload, so its next sighting is reported.
+     */
+    public void forget(String payload) {
+        synchronized (lastSeen) {
+            lastSeen.remove(payload);
+        }
+    }
+
+    public void clear() {
+        synchronized (lastSeen) {
+            lastSeen.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (lastSeen) {
+            return lastSeen.size();
+        }
+    }
+
+    /**
+     * @return repeat detections suppressed
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RecentScanCache[size=%d/%d, suppressed=%d, passed=%d, evictions=%d, expirations=%d]",
+                size(), capacity, getHitCount(), getMissCount(), getEvictionCount(), getExpirationCount());
+    }
+}
@@ -0,0 +1,595 @@
+package school.librarylogging;
+
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The scan flow without a user interface: frames from a {@link FrameSource} are decoded, the codes read as
+ * book labels with {@link BookLabelCodec}, repeats of a label still in view dropped, and the books looked up
+ * in a {@link Catalog}, which also borrows them. Subscribers such as {@link QRScannerForm} get
+ * {@link Listener} callbacks on the engine's threads.
+ *
+ * Live sources are decoded by an {@link AdaptiveFrameScanner}, which skips stale frames and slows down on a
+ * static scene. Recorded sources are decoded frame by frame on the engine's thread as fast as it goes, so a
+ * day of recorded traffic can be replayed to measure throughput.
+ *
+ * After a detection the engine pauses until {@link #resume()}, unless it borrows automatically
+ * ({@link #setAutoBorrower}). In batch mode ({@link #setBatchDecoder}) every label in a frame is reported
+ * and scanning continues.
+ */
+public class ScanEngine implements AutoCloseable {
+
+    /**
+     * Looks books up and borrows them.
+     */
+    public interface Catalog {
+        /**
+         * @return the book, or null if it is not in the catalog
+         */
+        Book findBook(int bookId) throws SQLException;
+
+        /**
+         * @return true if the book was available and is now borrowed
+         */
+        boolean borrow(int bookId, String borrower) throws SQLException;
+
+        /**
+         * @return for each book, whether it was borrowed
+         */
+        boolean[] borrowAll(List<Integer> bookIds, String borrower) throws SQLException;
+
+        /**
+         * @return the catalog of {@link DatabaseHandler}
+         */
+        static Catalog database() {
+            return new Catalog() {
+                @Override
+                public Book findBook(int bookId) throws SQLException {
+                    return DatabaseHandler.findBookById(bookId);
+                }
+
+                @Override
+                public boolean borrow(int bookId, String borrower) throws SQLException {
+                    return DatabaseHandler.borrowBook(bookId, borrower);
+                }
+
+                @Override
+                public boolean[] borrowAll(List<Integer> bookIds, String borrower) throws SQLException {
+                    return DatabaseHandler.borrowBooks(bookIds, borrower);
+                }
+            };
+        }
+    }
+
+    /**
+     * A code read by the engine.
+     *
+     * @param content Text of the code
+     * @param label   The text read as a book label, or null if it is not one
+     * @param book    The catalog entry of the label, or null if unknown
+     */
+    public record Detection(String content, BookLabelCodec.Label label, Book book) {
+        /**
+         * @return the title to show: the catalog's, else the label's, else null
+         */
+        public String bookName() {
+            if (book != null) {
+                return book.bookName();
+            }
+            return label != null && label.bookName() != null && !label.bookName().isBlank()
+                    ? label.bookName().trim() : null;
+        }
+    }
+
+    /**
+     * Receives what the engine sees, on the thread that decodes.
+     */
+    public interface Listener {
+        /**
+         * A new code was read; the engine is paused until {@link #resume()}.
+         */
+        default void onDetected(Detection detection) {
+        }
+
+        /**
+         * Batch mode: the new book labels in one frame. Scanning continues.
+         */
+        default void onDetectedMultiple(List<Detection> detections) {
+        }
+
+        /**
+         * Auto-borrow: a detected book was borrowed, or was not available. Scanning continues.
+         */
+        default void onBorrowed(Detection detection, boolean borrowed) {
+        }
+
+        /**
+         * A decoded frame held no code.
+         */
+        default void onNoCode() {
+        }
+
+        /**
+         * A code was found but could not be read.
+         */
+        default void onReadError(ReaderException ex) {
+        }
+
+        /**
+         * The source is exhausted or failed; {@code error} is null at a normal end.
+         */
+        default void onEnd(Exception error) {
+        }
+    }
+
+    private final FrameSource source;
+    private final QrDecoder decoder;
+    private final Catalog catalog;
+    private final Listener listener;
+    // Decodes live frames; null for recorded sources, which the engine thread decodes itself
+    private final AdaptiveFrameScanner scanner;
+    private final Thread engineThread;
+
+    // Used only on the thread that decodes, for every code read
+    private final BookLabelCodec.Parser parser = new BookLabelCodec.Parser();
+    // Payloads seen moments ago; a label left in front of the camera is not handled twice
+    private final RecentScanCache recentScans = new RecentScanCache();
+    private volatile MultiQrDecoder batchDecoder;
+    private volatile String autoBorrower;
+    private volatile Detection current;
+    private boolean paused;
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong framesRead = new AtomicLong();
+    private final AtomicLong codesRead = new AtomicLong();
+    private final AtomicLong repeats = new AtomicLong();
+    private final AtomicLong labels = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final Histogram frameMicros = new Histogram("us");
+    private final Histogram lookupMicros = new Histogram("us");
+    private volatile long startedAt;
+    private volatile long endedAt;
+    // When each recently detected book was read, for the scan-to-borrow latency
+    private final Map<Integer, Long> detectedAt = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            return size() > MAX_PENDING_BORROWS;
+        }
+    };
+
+    // Every engine in the process, see Metrics
+    private static final Metrics.Counter LABELS = Metrics.counter("scan.labels");
+    private static final Metrics.Counter BORROWED = Metrics.counter("scan.borrowed");
+    private static final Metrics.Counter UNAVAILABLE = Metrics.counter("scan.unavailable");
+    private static final Histogram LOOKUP_TIME = Metrics.histogram("scan.lookup.time", "us");
+    private static final Histogram SCAN_TO_BORROW = Metrics.histogram("scan.toBorrow.time", "ms");
+    private static final int MAX_PENDING_BORROWS = 256;
+
+    /**
+     * @param decoder Decoder, used only by this engine from now on
+     */
+    public ScanEngine(FrameSource source, QrDecoder decoder, Catalog catalog, Listener listener) {
+        this.source = source;
+        this.decoder = decoder;
+        this.catalog = catalog;
+        this.listener = listener;
+        this.scanner = source.isLive() ? new AdaptiveFrameScanner(decoder, new LiveListener()) : null;
+        this.engineThread = new Thread(this::run, "scan-engine");
+        engineThread.setDaemon(true);
+    }
+
+    public void start() {
+        startedAt = System.nanoTime();
+        engineThread.start();
+    }
+
+    private void run() {
+        Exception error = null;
+        try {
+            BufferedImage frame;
+            while (!closed && (frame = source.next()) != null) {
+                framesRead.incrementAndGet();
+                if (scanner != null) {
+                    scanner.offer(frame);
+                } else {
+                    awaitResume();
+                    decode(frame);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Error! Frame source " + source.getName() + " failed: " + ex.getMessage());
+            error = ex;
+        }
+        endedAt = System.nanoTime();
+        if (!closed) {
+            listener.onEnd(error);
+        }
+    }
+
+    /**
+     * Decodes a recorded frame on the engine thread.
+     */
+    private void decode(BufferedImage frame) {
+        long started = System.nanoTime();
+        try {
+            MultiQrDecoder multi = batchDecoder;
+            if (multi != null) {
+                List<Result> results = multi.decodeMultiple(frame);
+                if (results.isEmpty()) {
+                    listener.onNoCode();
+                } else {
+                    handleScanMultiple(results);
+                }
+                return;
+            }
+            Result result = decoder.decode(frame);
+            if (result == null) {
+                listener.onNoCode();
+            } else {
+                handleScan(result);
+            }
+        } catch (ReaderException ex) {
+            listener.onReadError(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            frameMicros.record((System.nanoTime() - started) / 1000);
+        }
+    }
+
+    /**
+     * Handles a single code; the decoder is paused when this is called.
+     */
+    private void handleScan(Result result) {
+        codesRead.incrementAndGet();
+        String content = result.getText();
+        if (content == null || content.isEmpty() || recentScans.isRepeat(content)) {
+            // Same label as a moment ago: skip parsing and the lookup, keep scanning
+            repeats.incrementAndGet();
+            resumeDecoding();
+            return;
+        }
+        Detection detection = detect(content);
+        String borrower = autoBorrower;
+        if (borrower != null && detection.label() != null) {
+            recentScans.touch(content);
+            listener.onBorrowed(detection, borrow(detection.label().bookId(), borrower));
+            resumeDecoding();
+            return;
+        }
+        current = detection;
+        if (scanner == null) {
+            synchronized (this) {
+                // The live scanner pauses itself; recorded frames wait in awaitResume
+                paused = true;
+            }
+        }
+        listener.onDetected(detection);
+    }
+
+    private void handleScanMultiple(List<Result> results) {
+        List<Detection> detections = new ArrayList<>();
+        for (Result result : results) {
+            codesRead.incrementAndGet();
+            String content = result.getText();
+            if (content == null || recentScans.isRepeat(content)) {
+                repeats.incrementAndGet();
+                continue;
+            }
+            Detection detection = detect(content);
+            if (detection.label() != null) {
+                detections.add(detection);
+            }
+        }
+        if (detections.isEmpty()) {
+            return;
+        }
+        String borrower = autoBorrower;
+        if (borrower == null) {
+            listener.onDetectedMultiple(detections);
+            return;
+        }
+        List<Integer> bookIds = new ArrayList<>(detections.size());
+        for (Detection detection : detections) {
+            bookIds.add(detection.label().bookId());
+        }
+        boolean[] borrowed = borrowAll(bookIds, borrower);
+        for (int i = 0; i < detections.size(); i++) {
+            listener.onBorrowed(detections.get(i), borrowed[i]);
+        }
+    }
+
+    /**
+     * Reads the content as a label and looks the book up.
+     */
+    private Detection detect(String content) {
+        if (!parser.parse(content)) {
+            return new Detection(content, null, null);
+        }
+        labels.incrementAndGet();
+        LABELS.increment();
+        BookLabelCodec.Label label = parser.toLabel();
+        long started = System.nanoTime();
+        synchronized (detectedAt) {
+            detectedAt.put(label.bookId(), started);
+        }
+        Book book = null;
+        try {
+            book = catalog.findBook(label.bookId());
+        } catch (SQLException ex) {
+            System.out.println("Error! " + ex.getMessage());
+        }
+        long micros = (System.nanoTime() - started) / 1000;
+        lookupMicros.record(micros);
+        LOOKUP_TIME.record(micros);
+        return new Detection(content, label, book);
+    }
+
+    /**
+     * Borrows a book through the catalog. Blocks on the database: call it off the EDT.
+     *
+     * @return true if the book was borrowed, false if it is not available
+     * @throws SQLException if the database cannot be reached
+     */
+    public boolean borrowBook(int bookId, String borrower) throws SQLException {
+        boolean borrowed = catalog.borrow(bookId, borrower);
+        countBorrow(bookId, borrowed);
+        return borrowed;
+    }
+
+    /**
+     * Borrows several books in one go through the catalog. Blocks on the database: call it off the EDT.
+     *
+     * @return for each book, whether it was borrowed
+     * @throws SQLException if the database cannot be reached
+     */
+    public boolean[] borrowBooks(List<Integer> bookIds, String borrower) throws SQLException {
+        boolean[] borrowed = catalog.borrowAll(bookIds, borrower);
+        for (int i = 0; i < borrowed.length; i++) {
+            countBorrow(bookIds.get(i), borrowed[i]);
+        }
+        return borrowed;
+    }
+
+    /**
+     * Counts a borrow attempt and, for a borrowed book this engine detected, the time since it was read.
+     */
+    private void countBorrow(int bookId, boolean borrowed) {
+        Long detected;
+        synchronized (detectedAt) {
+            detected = detectedAt.remove(bookId);
+        }
+        if (!borrowed) {
+            unavailable.incrementAndGet();
+            UNAVAILABLE.increment();
+            return;
+        }
+        borrows.incrementAndGet();
+        BORROWED.increment();
+        if (detected != null) {
+            SCAN_TO_BORROW.record((System.nanoTime() - detected) / 1_000_000);
+        }
+    }
+
+    private boolean borrow(int bookId, String borrower) {
+        try {
+            return borrowBook(bookId, borrower);
+        } catch (SQLException ex) {
+            System.out.println("Error! " + ex.getMessage());
+            unavailable.incrementAndGet();
+            UNAVAILABLE.increment();
+            return false;
+        }
+    }
+
+    private boolean[] borrowAll(List<Integer> bookIds, String borrower) {
+        try {
+            return borrowBooks(bookIds, borrower);
+        } catch (SQLException ex) {
+            System.out.println("Error! " + ex.getMessage());
+            unavailable.addAndGet(bookIds.size());
+            UNAVAILABLE.add(bookIds.size());
+            return new boolean[bookIds.size()];
+        }
+    }
+
+    /**
+     * Scans again after a detection. The detected code counts as seen from now on, so it is not reported
+     * again while it stays in view.
+     */
+    public void resume() {
+        Detection handled = current;
+        current = null;
+        if (handled != null) {
+            recentScans.touch(handled.content());
+        }
+        resumeDecoding();
+    }
+
+    private void resumeDecoding() {
+        if (scanner != null) {
+            scanner.resume();
+            return;
+        }
+        synchronized (this) {
+            paused = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Recorded sources: holds the next frame back while a detection waits for {@link #resume()}.
+     */
+    private synchronized void awaitResume() throws InterruptedException {
+        while (paused && !closed) {
+            wait();
+        }
+    }
+
+    /**
+     * @return the detection waiting for {@link #resume()}, or null
+     */
+    public Detection getCurrentDetection() {
+        return current;
+    }
+
+    /**
+     * Switches between single-code scanning (null) and batch scanning with the given decoder.
+     */
+    public void setBatchDecoder(MultiQrDecoder decoder) {
+        batchDecoder = decoder;
+        if (scanner != null) {
+            scanner.setBatchDecoder(decoder);
+        }
+    }
+
+    /**
+     * @param borrower Borrows every detected book for this borrower without waiting; null to report
+     *                 detections and wait for {@link #resume()}
+     */
+    public void setAutoBorrower(String borrower) {
+        autoBorrower = borrower;
+    }
+
+    /**
+     * Forgets the codes seen recently, so labels in view are reported again.
+     */
+    public void clearRecentScans() {
+        recentScans.clear();
+    }
+
+    /**
+     * Waits until a recorded source is exhausted.
+     */
+    public void awaitEnd() throws InterruptedException {
+        engineThread.join();
+    }
+
+    /**
+     * Stops scanning and closes the source.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            source.close();
+        } catch (Exception ex) {
+            System.out.println("Error! " + ex.getMessage());
+        }
+        engineThread.interrupt();
+        try {
+            engineThread.join(2000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (scanner != null) {
+            scanner.close();
+        }
+    }
+
+    /**
+     * Passes what the live scanner decodes on to the engine's handling.
+     */
+    private final class LiveListener implements AdaptiveFrameScanner.ScanListener {
+        @Override
+        public void onScan(Result result) {
+            handleScan(result);
+        }
+
+        @Override
+        public void onScanMultiple(List<Result> results) {
+            handleScanMultiple(results);
+        }
+
+        @Override
+        public void onNoCode() {
+            listener.onNoCode();
+        }
+
+        @Override
+        public void onReadError(ReaderException ex) {
+            listener.onReadError(ex);
+        }
+    }
+
+    public long getFramesRead() {
+        return framesRead.get();
+    }
+
+    public long getCodesRead() {
+        return codesRead.get();
+    }
+
+    /**
+     * @return codes dropped as repeats of a label still in view
+     */
+    public long getRepeatCount() {
+        return repeats.get();
+    }
+
+    public long getLabelCount() {
+        return labels.get();
+    }
+
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    /**
+     * @return borrows refused because the book was not available, or failed
+     */
+    public long getUnavailableCount() {
+        return unavailable.get();
+    }
+
+    /**
+     * @return frames read per second since {@link #start()}, up to the end of the source
+     */
+    public double getFramesPerSecond() {
+        long started = startedAt;
+        if (started == 0) {
+            return 0;
+        }
+        long ended = endedAt != 0 ? endedAt : System.nanoTime();
+        return ended == started ? 0 : getFramesRead() * 1e9 / (ended - started);
+    }
+
+    /**
+     * @return time to decode and handle one recorded frame, in microseconds; live frames are timed by the
+     *         {@link AdaptiveFrameScanner}
+     */
+    public Histogram getFrameTime() {
+        return frameMicros;
+    }
+
+    /**
+     * @return time to look a detected book up, in microseconds
+     */
+    public Histogram getLookupTime() {
+        return lookupMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScanEngine[%s, frames=%d (%.1f fps), codes=%d, repeats=%d, labels=%d, borrowed=%d, unavailable=%d, frame{%s}, lookup{%s}%s]",
+                source.getName(), getFramesRead(), getFramesPerSecond(), getCodesRead(), getRepeatCount(),
+                getLabelCount(), getBorrowCount(), getUnavailableCount(), frameMicros, lookupMicros,
+                scanner != null ? ", " + scanner : "");
+    }
+}
@@ -0,0 +1,383 @@
+package school.librarylogging;
+
+import com.github.sarxos.webcam.WebcamEvent;
+import com.github.sarxos.webcam.WebcamListener;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes the frames of several cameras, one lane per camera, on one shared pool of decode threads.
+ *
+ * Each camera delivers frames on its own capture thread into its lane, which keeps only the latest frame
+ * in a single slot, like {@link AdaptiveFrameScanner}. A lane has at most one decode queued or running:
+ * when it finishes and a newer frame is waiting, the lane goes to the back of the pool's queue. So a busy
+ * camera only drops its own stale frames, every lane gets its turn in order, and the queue never holds
+ * more than one task per lane.
+ *
+ * After a code is read its lane pauses until {@link Lane#resume()}; the other lanes keep scanning.
+ */
+public class ScanStation implements AutoCloseable {
+
+    /**
+     * Receives scan outcomes on a decode thread; never for two frames of the same lane at once.
+     */
+    public interface Listener {
+        /**
+         * A code was read. The lane is paused until {@link Lane#resume()}.
+         */
+        void onScan(Lane lane, Result result);
+
+        /**
+         * A decoded frame held no code.
+         */
+        default void onNoCode(Lane lane) {
+        }
+
+        /**
+         * A code was found but could not be read.
+         */
+        default void onReadError(Lane lane, ReaderException ex) {
+        }
+    }
+
+    public static final int DEFAULT_MAX_LANES = 16;
+    // Weight of the newest interval in the frame rate averages
+    private static final double RATE_SMOOTHING = 0.1;
+
+    // Every lane of every station, see Metrics
+    private static final Metrics.Counter FRAMES_CAPTURED = Metrics.counter("scan.frames.captured");
+    private static final Metrics.Counter FRAMES_DROPPED = Metrics.counter("scan.frames.dropped");
+    private static final Histogram QUEUE_TIME = Metrics.histogram("scan.station.queueTime", "us");
+    private static final Histogram DETECT_TIME = Metrics.histogram("scan.detect.time", "us");
+
+    private final Listener listener;
+    private final int maxLanes;
+    private final ThreadPoolExecutor pool;
+    private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Sized by {@code -Dlibrarylogging.station.decodeThreads} (default: one per core) and
+     * {@code -Dlibrarylogging.station.maxLanes} (default 16).
+     */
+    public static ScanStation fromSystemProperties(Listener listener) {
+        return new ScanStation(
+                Integer.getInteger("librarylogging.station.decodeThreads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("librarylogging.station.maxLanes", DEFAULT_MAX_LANES),
+                listener);
+    }
+
+    /**
+     * @param decodeThreads Threads shared by all lanes
+     * @param maxLanes      Most lanes the station takes; also the bound of the decode queue
+     * @param listener      Receives scan outcomes
+     */
+    public ScanStation(int decodeThreads, int maxLanes, Listener listener) {
+        if (decodeThreads <= 0 || maxLanes <= 0) {
+            throw new IllegalArgumentException("Invalid station: " + decodeThreads + " threads, " + maxLanes + " lanes");
+        }
+        this.listener = listener;
+        this.maxLanes = maxLanes;
+        AtomicInteger threadNumber = new AtomicInteger();
+        // One task per lane at most, so the queue cannot overflow
+        this.pool = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxLanes), runnable -> {
+            Thread thread = new Thread(runnable, "station-decoder-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a lane decoding with {@link QrDecoder#fromSystemProperties()}.
+     */
+    public Lane addLane(String name) {
+        return addLane(name, QrDecoder.fromSystemProperties());
+    }
+
+    /**
+     * @param decoder Decoder, used only by this lane from now on
+     * @throws IllegalStateException if the station is closed or has {@code maxLanes} lanes already
+     */
+    public synchronized Lane addLane(String name, QrDecoder decoder) {
+        if (closed) {
+            throw new IllegalStateException("Scan station is closed");
+        }
+        if (lanes.size() >= maxLanes) {
+            throw new IllegalStateException("Scan station takes at most " + maxLanes + " lanes");
+        }
+        Lane lane = new Lane(lanes.size(), name, decoder);
+        lanes.add(lane);
+        return lane;
+    }
+
+    public List<Lane> getLanes() {
+        return List.copyOf(lanes);
+    }
+
+    public int getMaxLanes() {
+        return maxLanes;
+    }
+
+    public int getDecodeThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Stops decoding; frames offered afterwards are ignored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("ScanStation[threads=%d, lanes=%d]",
+                getDecodeThreads(), lanes.size()));
+        for (Lane lane : lanes) {
+            sb.append(System.lineSeparator()).append("  ").append(lane);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One camera of the station. Register it as the camera's {@link WebcamListener}, or {@link #offer} frames.
+     */
+    public final class Lane implements WebcamListener {
+
+        private final int index;
+        private final String name;
+        private final QrDecoder decoder;
+        private final AtomicReference<Frame> latest = new AtomicReference<>();
+        // Whether a decode of this lane is queued or running
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean paused;
+
+        // Metrics
+        private final AtomicLong framesReceived = new AtomicLong();
+        private final AtomicLong framesDropped = new AtomicLong();
+        private final AtomicLong framesDecoded = new AtomicLong();
+        private final AtomicLong codesRead = new AtomicLong();
+        private final Histogram queueMicros = new Histogram("us");
+        private final Histogram decodeMicros = new Histogram("us");
+        private final Histogram detectMicros = new Histogram("us");
+        // Smoothed nanoseconds between frames; written by the capture thread and the lane's decodes
+        private volatile double captureIntervalNanos;
+        private volatile double decodeIntervalNanos;
+        private long lastFrameAt;
+        private long lastDecodeAt;
+
+        private record Frame(BufferedImage image, long arrivedAt) {
+        }
+
+        private Lane(int index, String name, QrDecoder decoder) {
+            this.index = index;
+            this.name = name;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void webcamImageObtained(WebcamEvent event) {
+            offer(event.getImage());
+        }
+
+        /**
+         * Hands a new frame to the lane, replacing any frame not decoded yet. Called by one capture thread.
+         */
+        public void offer(BufferedImage image) {
+            if (image == null || paused || closed) {
+                return;
+            }
+            framesReceived.incrementAndGet();
+            FRAMES_CAPTURED.increment();
+            long now = System.nanoTime();
+            if (lastFrameAt != 0) {
+                captureIntervalNanos = smooth(captureIntervalNanos, now - lastFrameAt);
+            }
+            lastFrameAt = now;
+            if (latest.getAndSet(new Frame(image, now)) != null) {
+                framesDropped.incrementAndGet();
+                FRAMES_DROPPED.increment();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (latest.get() == null || paused || closed || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            long queuedAt = System.nanoTime();
+            try {
+                pool.execute(() -> decodeNext(queuedAt));
+            } catch (RuntimeException ex) {
+                // Only when the station is closing
+                scheduled.set(false);
+            }
+        }
+
+        private void decodeNext(long queuedAt) {
+            try {
+                Frame frame = latest.getAndSet(null);
+                if (frame != null && !paused) {
+                    long started = System.nanoTime();
+                    long queued = (started - queuedAt) / 1000;
+                    queueMicros.record(queued);
+                    QUEUE_TIME.record(queued);
+                    decode(frame);
+                    long finished = System.nanoTime();
+                    decodeMicros.record((finished - started) / 1000);
+                    if (lastDecodeAt != 0) {
+                        decodeIntervalNanos = smooth(decodeIntervalNanos, finished - lastDecodeAt);
+                    }
+                    lastDecodeAt = finished;
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // A frame that came in meanwhile waits behind the other lanes
+            schedule();
+        }
+
+        private void decode(Frame frame) {
+            framesDecoded.incrementAndGet();
+            try {
+                Result result = decoder.decode(frame.image());
+                if (result == null) {
+                    listener.onNoCode(this);
+                    return;
+                }
+                long detect = (System.nanoTime() - frame.arrivedAt()) / 1000;
+                detectMicros.record(detect);
+                DETECT_TIME.record(detect);
+                codesRead.incrementAndGet();
+                paused = true;
+                latest.set(null);
+                listener.onScan(this, result);
+            } catch (ReaderException ex) {
+                listener.onReadError(this, ex);
+            } catch (RuntimeException ex) {
+                System.out.println("Error! Frame decode failed on " + name + ": " + ex.getMessage());
+            }
+        }
+
+        private static double smooth(double average, long interval) {
+            return average == 0 ? interval : average + RATE_SMOOTHING * (interval - average);
+        }
+
+        /**
+         * Starts decoding this lane again after a scan.
+         */
+        public void resume() {
+            latest.set(null);
+            paused = false;
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        /**
+         * @return position of the lane in the station, from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void webcamOpen(WebcamEvent event) {
+        }
+
+        @Override
+        public void webcamClosed(WebcamEvent event) {
+        }
+
+        @Override
+        public void webcamDisposed(WebcamEvent event) {
+        }
+
+        public long getFramesReceived() {
+            return framesReceived.get();
+        }
+
+        /**
+         * @return frames replaced by a newer one before a decode thread picked them up
+         */
+        public long getFramesDropped() {
+            return framesDropped.get();
+        }
+
+        public long getFramesDecoded() {
+            return framesDecoded.get();
+        }
+
+        public long getCodesRead() {
+            return codesRead.get();
+        }
+
+        /**
+         * @return frames per second the camera delivers, averaged over the last few dozen frames
+         */
+        public double getCaptureFps() {
+            double interval = captureIntervalNanos;
+            return interval == 0 ? 0 : 1e9 / interval;
+        }
+
+        /**
+         * @return frames per second the pool decodes for this lane, averaged over the last few dozen decodes
+         */
+        public double getDecodeFps() {
+            double interval = decodeIntervalNanos;
+            return interval == 0 ? 0 : 1e9 / interval;
+        }
+
+        /**
+         * @return time a decode waited for a pool thread, in microseconds
+         */
+        public Histogram getQueueTime() {
+            return queueMicros;
+        }
+
+        /**
+         * @return time to decode one frame, in microseconds
+         */
+        public Histogram getDecodeTime() {
+            return decodeMicros;
+        }
+
+        /**
+         * @return time from a frame's arrival to its decoded result, in microseconds
+         */
+        public Histogram getDetectLatency() {
+            return detectMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Lane[%d %s, capture=%.1f fps, decode=%.1f fps, received=%d, dropped=%d, decoded=%d, codes=%d, queue{%s}, decode{%s}, detect{%s}]",
+                    index, name, getCaptureFps(), getDecodeFps(), getFramesReceived(), getFramesDropped(),
+                    getFramesDecoded(), getCodesRead(), queueMicros, decodeMicros, detectMicros);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package school.librarylogging;
+
+import com.github.sarxos.webcam.Webcam;
+import com.github.sarxos.webcam.WebcamPanel;
+import com.github.sarxos.webcam.WebcamResolution;
+import com.google.zxing.Result;
+
+import javax.swing.*;
+import java.awt.*;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Station mode: every attached camera is a lane of one {@link ScanStation}, so one kiosk PC serves several
+ * lanes at once. Each lane shows its camera, the last book it scanned with Borrow and Skip buttons, and
+ * its frame rates and decode latency.
+ */
+public class ScanStationForm extends JFrame implements ScanStation.Listener {
+
+    private final MainForm parentForm;
+    private final User currentUser;
+    private final ScanStation station;
+    // Read by the decode threads
+    private final List<LanePanel> lanePanels = new CopyOnWriteArrayList<>();
+    private final Timer statsTimer;
+
+    /**
+     * The widgets and scan state of one lane.
+     */
+    private final class LanePanel extends JPanel {
+        final ScanStation.Lane lane;
+        final Webcam webcam;
+        final JLabel statusLabel = new JLabel("Scanning...", SwingConstants.CENTER);
+        final JLabel statsLabel = new JLabel(" ", SwingConstants.CENTER);
+        final JButton borrowButton = new JButton("Borrow");
+        final JButton skipButton = new JButton("Skip");
+        // Used only on the decode thread serving this lane, one frame at a time
+        final BookLabelCodec.Parser parser = new BookLabelCodec.Parser();
+        final RecentScanCache recentScans = new RecentScanCache();
+        // The scan on display; written on the decode thread while the lane is paused
+        volatile String detectedContent;
+        volatile int detectedBookId;
+        volatile String detectedName;
+
+        LanePanel(ScanStation.Lane lane, Webcam webcam) {
+            super(new BorderLayout(5, 5));
+            this.lane = lane;
+            this.webcam = webcam;
+            setBorder(BorderFactory.createTitledBorder("Lane " + (lane.getIndex() + 1) + ": " + lane.getName()));
+
+            WebcamPanel preview = new WebcamPanel(webcam);
+            preview.setMirrored(true);
+            preview.setFPSDisplayed(false);
+            preview.setPreferredSize(new Dimension(320, 240));
+            add(preview, BorderLayout.CENTER);
+
+            statusLabel.setFont(new Font("Arial", Font.BOLD, 13));
+            statsLabel.setFont(new Font("Monospaced", Font.PLAIN, 11));
+            borrowButton.setEnabled(false);
+            skipButton.setEnabled(false);
+            borrowButton.addActionListener(e -> borrow(this));
+            skipButton.addActionListener(e -> resume(this));
+
+            JPanel buttons = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+            buttons.add(borrowButton);
+            buttons.add(skipButton);
+            JPanel bottom = new JPanel(new GridLayout(3, 1, 0, 3));
+            bottom.add(statusLabel);
+            bottom.add(buttons);
+            bottom.add(statsLabel);
+            add(bottom, BorderLayout.SOUTH);
+        }
+    }
+
+    public ScanStationForm(MainForm parent, User user) {
+        this.parentForm = parent;
+        this.currentUser = user;
+        this.station = ScanStation.fromSystemProperties(this);
+        setTitle("Library Logging System - Scan Station");
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        JLabel titleLabel = new JLabel("Scan Station - borrowing as " + currentUser.name, SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        mainPanel.add(titleLabel, BorderLayout.NORTH);
+        mainPanel.add(openLanes(), BorderLayout.CENTER);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> closeAndReturn());
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(closeButton);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                closeAndReturn();
+            }
+        });
+        add(mainPanel);
+
+        statsTimer = new Timer(1000, e -> refreshStats());
+        statsTimer.start();
+        pack();
+        setLocationRelativeTo(null);
+    }
+
+    /**
+     * Opens every attached camera as a lane, up to the station's limit.
+     */
+    private JComponent openLanes() {
+        List<Webcam> webcams;
+        try {
+            webcams = Webcam.getWebcams();
+        } catch (RuntimeException ex) {
+            return message("Camera Error: " + ex.getMessage(), Color.RED);
+        }
+        for (Webcam webcam : webcams) {
+            if (lanePanels.size() == station.getMaxLanes()) {
+                System.out.println("Error! Scan station takes at most " + station.getMaxLanes() + " cameras");
+                break;
+            }
+            try {
+                webcam.setViewSize(WebcamResolution.VGA.getSize());
+                // Asynchronous mode: each webcam's own updater thread delivers its frames to its lane
+                webcam.open(true);
+            } catch (RuntimeException ex) {
+                System.out.println("Error! Cannot open " + webcam.getName() + ": " + ex.getMessage());
+                continue;
+            }
+            // Lane i is shown by lanePanels[i]; the panel is in place before the first frame arrives
+            ScanStation.Lane lane = station.addLane(webcam.getName());
+            lanePanels.add(new LanePanel(lane, webcam));
+            webcam.addWebcamListener(lane);
+        }
+        if (lanePanels.isEmpty()) {
+            return message("No camera detected", Color.WHITE);
+        }
+        int columns = (int) Math.ceil(Math.sqrt(lanePanels.size()));
+        JPanel grid = new JPanel(new GridLayout(0, columns, 10, 10));
+        for (LanePanel panel : lanePanels) {
+            grid.add(panel);
+        }
+        return grid;
+    }
+
+    private static JComponent message(String text, Color color) {
+        JLabel label = new JLabel(text, SwingConstants.CENTER);
+        label.setForeground(color);
+        label.setFont(new Font("Arial", Font.BOLD, 16));
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setPreferredSize(new Dimension(640, 480));
+        panel.setBackground(Color.BLACK);
+        panel.add(label, BorderLayout.CENTER);
+        return panel;
+    }
+
+    @Override
+    public void onScan(ScanStation.Lane lane, Result result) {
+        LanePanel panel = lanePanels.get(lane.getIndex());
+        String content = result.getText();
+        if (content == null || panel.recentScans.isRepeat(content) || !panel.parser.parse(content)) {
+            // Not a new book label: keep this lane scanning
+            lane.resume();
+            return;
+        }
+        int bookId = panel.parser.bookId();
+        Book book = lookupBook(bookId);
+        String name = book != null ? book.bookName() : panel.parser.hasBookName() ? panel.parser.bookName() : null;
+        panel.detectedContent = content;
+        panel.detectedBookId = bookId;
+        panel.detectedName = name;
+        SwingUtilities.invokeLater(() -> {
+            panel.statusLabel.setForeground(new Color(0, 150, 0));
+            panel.statusLabel.setText(bookId + " - " + (name != null ? name : "(not in catalog)")
+                    + (book != null && book.borrowed() == 1 ? " (Borrowed)" : ""));
+            panel.borrowButton.setEnabled(book != null && book.borrowed() == 0);
+            panel.skipButton.setEnabled(true);
+        });
+    }
+
+    private Book lookupBook(int bookId) {
+        try {
+            return DatabaseHandler.findBookById(bookId);
+        } catch (SQLException ex) {
+            System.out.println("Error! " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void borrow(LanePanel panel) {
+        int bookId = panel.detectedBookId;
+        String name = panel.detectedName;
+        panel.borrowButton.setEnabled(false);
+        panel.skipButton.setEnabled(false);
+        AsyncDatabase.onEdt(AsyncDatabase.supply(() -> DatabaseHandler.borrowBook(bookId, currentUser.name)),
+                borrowed -> {
+                    JOptionPane.showMessageDialog(this,
+                            borrowed ? "Book '" + name + "' has been borrowed by " + currentUser.name + "."
+                                    : "Book '" + name + "' is not available (already borrowed or not in the catalog).",
+                            "Lane " + (panel.lane.getIndex() + 1),
+                            borrowed ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                    resume(panel);
+                },
+                error -> {
+                    JOptionPane.showMessageDialog(this,
+                            "Failed to borrow book: " + error.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    resume(panel);
+                });
+    }
+
+    private void resume(LanePanel panel) {
+        String handled = panel.detectedContent;
+        if (handled != null) {
+            // The lane was paused while the scan was handled; count the TTL from now
+            panel.recentScans.touch(handled);
+        }
+        panel.detectedContent = null;
+        panel.statusLabel.setForeground(Color.BLUE);
+        panel.statusLabel.setText("Scanning...");
+        panel.borrowButton.setEnabled(false);
+        panel.skipButton.setEnabled(false);
+        panel.lane.resume();
+    }
+
+    private void refreshStats() {
+        for (LanePanel panel : lanePanels) {
+            ScanStation.Lane lane = panel.lane;
+            panel.statsLabel.setText(String.format("%.0f fps in, %.0f fps decoded, decode p50 %d us, p99 %d us",
+                    lane.getCaptureFps(), lane.getDecodeFps(),
+                    lane.getDecodeTime().getPercentile(50), lane.getDecodeTime().getPercentile(99)));
+        }
+    }
+
+    private void closeAndReturn() {
+        statsTimer.stop();
+        // Stop decoding before the webcams go away
+        for (LanePanel panel : lanePanels) {
+            panel.webcam.removeWebcamListener(panel.lane);
+        }
+        station.close();
+        for (LanePanel panel : lanePanels) {
+            if (panel.webcam.isOpen()) {
+                panel.webcam.close();
+            }
+        }
+
+        dispose();
+
+        if (parentForm != null) {
+            parentForm.returnFromScanner();
+        }
+    }
+}
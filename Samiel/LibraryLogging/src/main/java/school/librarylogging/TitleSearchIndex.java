@@ -0,0 +1,409 @@
+package school.librarylogging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process trigram index over book_name, used instead of {@code LIKE '%term%'} scans.
+ *
+ * Every lower-cased title is split into overlapping three-character grams, and each gram maps to a
+ * sorted array of the book_ids containing it. A substring query intersects the posting lists of its
+ * own grams (smallest first), then confirms the candidates against the stored titles. Queries shorter
+ * than three characters fall back to a scan of the in-memory titles.
+ *
+ * The index starts cold; {@link DatabaseHandler} builds it in the background at startup and falls back
+ * to SQL until {@link #isReady()} returns true.
+ */
+public class TitleSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private volatile boolean ready;
+    // Books added, renamed or removed while a build runs; their rows in pages read earlier are stale
+    private Set<Integer> changedDuringBuild;
+    // Incremented by every build; a build whose number is no longer current has been superseded
+    private long buildGeneration;
+
+    // Metrics
+    private volatile long buildMillis;
+    private final AtomicLong searchCount = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+
+    /**
+     * Replaces the whole index with the given books and marks it ready.
+     * Books added, renamed or removed while the build runs keep that newer state: their rows in pages
+     * fetched before the change are skipped. Starting a build supersedes one still running: the older
+     * build stops at its next page and never marks the index ready, so only the latest build publishes it.
+     *
+     * @param pages Supplies the catalog one page at a time; returns an empty list when done
+     * @return true if this build completed the index, false if a newer build superseded it
+     */
+    public boolean build(PageSource pages) throws Exception {
+        long start = System.nanoTime();
+        long generation;
+        lock.writeLock().lock();
+        try {
+            generation = ++buildGeneration;
+            ready = false;
+            titles.clear();
+            grams.clear();
+            changedDuringBuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Pages are fetched outside the lock so add/update/remove calls can interleave with the build
+        try {
+            int afterBookId = 0;
+            List<Book> page;
+            while (!(page = pages.next(afterBookId)).isEmpty()) {
+                lock.writeLock().lock();
+                try {
+                    if (generation != buildGeneration) {
+                        return false;
+                    }
+                    for (Book book : page) {
+                        if (!changedDuringBuild.contains(book.bookId())) {
+                            addLocked(book.bookId(), book.bookName());
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                afterBookId = page.get(page.size() - 1).bookId();
+            }
+        } catch (Exception ex) {
+            lock.writeLock().lock();
+            try {
+                if (generation == buildGeneration) {
+                    changedDuringBuild = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != buildGeneration) {
+                return false;
+            }
+            grams.values().forEach(Postings::trim);
+            changedDuringBuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        buildMillis = (System.nanoTime() - start) / 1_000_000;
+        return true;
+    }
+
+    /**
+     * Supplies the catalog page by page in book_id order.
+     */
+    @FunctionalInterface
+    public interface PageSource {
+        List<Book> next(int afterBookId) throws Exception;
+    }
+
+    /**
+     * Marks the index cold so searches go to SQL until the next {@link #build}.
+     */
+    public void invalidate() {
+        ready = false;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void add(int bookId, String bookName) {
+        lock.writeLock().lock();
+        try {
+            markChanged(bookId);
+            addLocked(bookId, bookName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void update(int bookId, String newBookName) {
+        lock.writeLock().lock();
+        try {
+            markChanged(bookId);
+            removeLocked(bookId);
+            addLocked(bookId, newBookName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int bookId) {
+        lock.writeLock().lock();
+        try {
+            markChanged(bookId);
+            removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markChanged(int bookId) {
+        if (changedDuringBuild != null) {
+            changedDuringBuild.add(bookId);
+        }
+    }
+
+    private void addLocked(int bookId, String bookName) {
+        if (bookName == null) {
+            return;
+        }
+        String title = bookName.toLowerCase(Locale.ROOT);
+        titles.put(bookId, title);
+        for (long gram : gramsOf(title)) {
+            grams.computeIfAbsent(gram, g -> new Postings()).add(bookId);
+        }
+    }
+
+    private void removeLocked(int bookId) {
+        String title = titles.remove(bookId);
+        if (title == null) {
+            return;
+        }
+        for (long gram : gramsOf(title)) {
+            Postings postings = grams.get(gram);
+            if (postings != null && postings.remove(bookId) && postings.size == 0) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * @return the distinct trigrams of the text, packed as longs
+     */
+    private static long[] gramsOf(String text) {
+        if (text.length() < GRAM) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() - GRAM + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = pack(text, i);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    private static long pack(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    /**
+     * Finds books whose title contains the query, best matches first:
+     * exact title, then title prefix, then word prefix, then any substring; shorter titles rank higher.
+     *
+     * @param query Substring to look for (case-insensitive)
+     * @param limit Maximum number of results, or 0 for all
+     * @return matching book_ids in rank order
+     */
+    public List<Integer> search(String query, int limit) {
+        long start = System.nanoTime();
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        List<Match> matches = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            if (needle.length() < GRAM) {
+                for (Map.Entry<Integer, String> entry : titles.entrySet()) {
+                    collect(entry.getKey(), entry.getValue(), needle, matches);
+                }
+            } else {
+                for (int bookId : candidates(needle)) {
+                    collect(bookId, titles.get(bookId), needle, matches);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.comparingInt(Match::rank)
+                .thenComparingInt(Match::length)
+                .thenComparingInt(Match::bookId));
+        int size = limit > 0 ? Math.min(limit, matches.size()) : matches.size();
+        List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(matches.get(i).bookId());
+        }
+
+        searchCount.incrementAndGet();
+        searchNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Intersects the posting lists of the query's grams, rarest gram first.
+     */
+    private int[] candidates(String needle) {
+        long[] queryGrams = gramsOf(needle);
+        Postings[] lists = new Postings[queryGrams.length];
+        for (int i = 0; i < queryGrams.length; i++) {
+            lists[i] = grams.get(queryGrams[i]);
+            if (lists[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = result.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            Postings other = lists[i];
+            int kept = 0;
+            for (int j = 0; j < count; j++) {
+                if (Arrays.binarySearch(other.ids, 0, other.size, result[j]) >= 0) {
+                    result[kept++] = result[j];
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static void collect(int bookId, String title, String needle, List<Match> matches) {
+        int position = title.indexOf(needle);
+        if (position < 0) {
+            return;
+        }
+        int rank;
+        if (title.length() == needle.length()) {
+            rank = 0;
+        } else if (position == 0) {
+            rank = 1;
+        } else if (!Character.isLetterOrDigit(title.charAt(position - 1))) {
+            rank = 2;
+        } else {
+            rank = 3;
+        }
+        matches.add(new Match(bookId, rank, title.length()));
+    }
+
+    private record Match(int bookId, int rank, int length) {
+    }
+
+    public int getTitleCount() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getGramCount() {
+        lock.readLock().lock();
+        try {
+            return grams.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getPostingCount() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Postings postings : grams.values()) {
+                total += postings.size;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    public long getSearchCount() {
+        return searchCount.get();
+    }
+
+    /**
+     * @return average search time in microseconds
+     */
+    public double getAverageSearchMicros() {
+        long count = searchCount.get();
+        return count == 0 ? 0 : searchNanos.get() / 1000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TitleSearchIndex[ready=%s, titles=%d, grams=%d, postings=%d, build=%dms, searches=%d, avgSearch=%.1fus]",
+                ready, getTitleCount(), getGramCount(), getPostingCount(), buildMillis, getSearchCount(), getAverageSearchMicros());
+    }
+
+    /**
+     * Sorted, growable list of book_ids.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int bookId) {
+            if (size > 0 && ids[size - 1] >= bookId) {
+                int position = Arrays.binarySearch(ids, 0, size, bookId);
+                if (position >= 0) {
+                    return;
+                }
+                insertAt(-position - 1, bookId);
+                return;
+            }
+            insertAt(size, bookId);
+        }
+
+        private void insertAt(int position, int bookId) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = bookId;
+            size++;
+        }
+
+        boolean remove(int bookId) {
+            int position = Arrays.binarySearch(ids, 0, size, bookId);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        void trim() {
+            if (ids.length > size) {
+                ids = Arrays.copyOf(ids, Math.max(size, 1));
+            }
+        }
+    }
+}
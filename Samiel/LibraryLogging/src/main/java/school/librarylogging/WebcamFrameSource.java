@@ -0,0 +1,117 @@
+package school.librarylogging;
+
+import com.github.sarxos.webcam.Webcam;
+import com.github.sarxos.webcam.WebcamEvent;
+import com.github.sarxos.webcam.WebcamListener;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frames of a webcam opened in asynchronous mode, as its updater thread delivers them. Only the latest
+ * frame is kept; {@link #next()} waits for a newer one.
+ *
+ * The webcam stays open after {@link #close()}: whoever opened it, for instance for a preview, closes it.
+ */
+public class WebcamFrameSource implements FrameSource, WebcamListener {
+
+    private final Webcam webcam;
+    private BufferedImage latest;
+    private boolean closed;
+
+    // Metrics
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    // Every source in the process, see Metrics
+    private static final Metrics.Counter FRAMES_CAPTURED = Metrics.counter("scan.frames.captured");
+    private static final Metrics.Counter FRAMES_DROPPED = Metrics.counter("scan.frames.dropped");
+
+    /**
+     * @param webcam An open webcam; frames are taken from it until the source is closed
+     */
+    public WebcamFrameSource(Webcam webcam) {
+        this.webcam = webcam;
+        webcam.addWebcamListener(this);
+    }
+
+    @Override
+    public synchronized BufferedImage next() throws InterruptedException {
+        while (latest == null && !closed) {
+            wait();
+        }
+        BufferedImage frame = latest;
+        latest = null;
+        return frame;
+    }
+
+    @Override
+    public void webcamImageObtained(WebcamEvent event) {
+        BufferedImage image = event.getImage();
+        if (image == null) {
+            return;
+        }
+        framesReceived.incrementAndGet();
+        FRAMES_CAPTURED.increment();
+        synchronized (this) {
+            if (latest != null) {
+                framesDropped.incrementAndGet();
+                FRAMES_DROPPED.increment();
+            }
+            latest = image;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return webcam.getName();
+    }
+
+    public Webcam getWebcam() {
+        return webcam;
+    }
+
+    @Override
+    public void close() {
+        webcam.removeWebcamListener(this);
+        synchronized (this) {
+            closed = true;
+            latest = null;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void webcamOpen(WebcamEvent event) {
+    }
+
+    @Override
+    public void webcamClosed(WebcamEvent event) {
+        close();
+    }
+
+    @Override
+    public void webcamDisposed(WebcamEvent event) {
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * @return frames replaced by a newer one before they were taken
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WebcamFrameSource[%s, received=%d, dropped=%d]", getName(), getFramesReceived(), getFramesDropped());
+    }
+}
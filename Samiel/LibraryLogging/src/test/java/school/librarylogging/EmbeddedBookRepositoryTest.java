@@ -0,0 +1,199 @@
+package school.librarylogging;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddedBookRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedAppendDoesNotHideLaterRecordsOnReplay() throws Exception {
+        Path file = dir.resolve("books.ltdb");
+        EmbeddedBookRepository repository = new EmbeddedBookRepository(file);
+        int first = repository.addBook("First", 0);
+        long sizeBefore = Files.size(file);
+
+        // The next record is torn: half of it reaches the file, then the disk is full
+        FailingChannel failing = new FailingChannel(channelOf(repository));
+        setChannel(repository, failing);
+        failing.tearNextWrite = true;
+        assertThrows(SQLException.class, () -> repository.addBook("Torn", 0));
+        assertEquals(sizeBefore, Files.size(file));
+
+        int second = repository.addBook("Second", 0);
+        repository.close();
+
+        EmbeddedBookRepository reopened = new EmbeddedBookRepository(file);
+        try {
+            List<Book> books = reopened.findBooksByIds(List.of(first, second));
+            assertEquals(List.of("First", "Second"), books.stream().map(Book::bookName).toList());
+            assertEquals(List.of(), reopened.findBooks("Torn"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void replayDiscardsTornTail() throws Exception {
+        Path file = dir.resolve("books.ltdb");
+        EmbeddedBookRepository repository = new EmbeddedBookRepository(file);
+        int first = repository.addBook("First", 0);
+        repository.close();
+        long committed = Files.size(file);
+
+        // A crash during a write leaves a record header promising more bytes than follow it
+        Files.write(file, new byte[]{0, 0, 0, 64, 1, 2, 3, 4, 1}, StandardOpenOption.APPEND);
+
+        EmbeddedBookRepository reopened = new EmbeddedBookRepository(file);
+        try {
+            assertEquals(committed, Files.size(file));
+            assertEquals("First", reopened.findBooksByIds(List.of(first)).get(0).bookName());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static FileChannel channelOf(EmbeddedBookRepository repository) throws ReflectiveOperationException {
+        Field field = EmbeddedBookRepository.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        return (FileChannel) field.get(repository);
+    }
+
+    private static void setChannel(EmbeddedBookRepository repository, FileChannel channel) throws ReflectiveOperationException {
+        Field field = EmbeddedBookRepository.class.getDeclaredField("channel");
+        field.setAccessible(true);
+        field.set(repository, channel);
+    }
+
+    /**
+     * Delegates to a real channel; when armed, writes half of the next buffer and then fails.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        boolean tearNextWrite;
+        private boolean torn;
+
+        FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            if (torn) {
+                torn = false;
+                throw new IOException("No space left on device");
+            }
+            if (tearNextWrite) {
+                tearNextWrite = false;
+                torn = true;
+                ByteBuffer half = src.duplicate();
+                half.limit(half.position() + half.remaining() / 2);
+                int written = delegate.write(half, position);
+                src.position(src.position() + written);
+                return written;
+            }
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
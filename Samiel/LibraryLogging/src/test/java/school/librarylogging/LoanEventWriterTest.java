@@ -0,0 +1,102 @@
+package school.librarylogging;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoanEventWriterTest {
+
+    private static final int EVENTS = 10;
+
+    @Test
+    void badEventFailsAlone() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        BookRepository repository = repository(events -> {
+            attempts.incrementAndGet();
+            for (LoanEvent event : events) {
+                if (event.borrower().length() > 100) {
+                    throw new SQLException("Data too long for column 'borrower'", "22001");
+                }
+            }
+        });
+
+        try (LoanEventWriter writer = new LoanEventWriter(repository, 50, 256)) {
+            List<CompletableFuture<Boolean>> futures = submitAll(writer, 7);
+            for (int i = 0; i < EVENTS; i++) {
+                if (i == 6) {
+                    CompletableFuture<Boolean> bad = futures.get(i);
+                    assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+                } else {
+                    assertTrue(futures.get(i).get(5, TimeUnit.SECONDS));
+                }
+            }
+            assertEquals(1, writer.getFailedBatchCount());
+            assertTrue(attempts.get() > 1);
+        }
+    }
+
+    @Test
+    void connectionFailureFailsBatchOnce() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        BookRepository repository = repository(events -> {
+            attempts.incrementAndGet();
+            throw new SQLException("Communications link failure", "08S01");
+        });
+
+        try (LoanEventWriter writer = new LoanEventWriter(repository, 50, 256)) {
+            List<CompletableFuture<Boolean>> futures = submitAll(writer, 0);
+            for (CompletableFuture<Boolean> future : futures) {
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, attempts.get());
+            assertEquals(1, writer.getFailedBatchCount());
+        }
+    }
+
+    /**
+     * @param badBookId Book whose borrower name is too long for the column, or 0 for none
+     */
+    private static List<CompletableFuture<Boolean>> submitAll(LoanEventWriter writer, int badBookId) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int bookId = 1; bookId <= EVENTS; bookId++) {
+            String borrower = bookId == badBookId ? "x".repeat(200) : "student";
+            futures.add(writer.submit(LoanEvent.borrowing(bookId, borrower)));
+        }
+        return futures;
+    }
+
+    @FunctionalInterface
+    private interface Apply {
+        void check(List<LoanEvent> events) throws SQLException;
+    }
+
+    /**
+     * @return a repository whose applyLoanEvents runs the check, then applies every event
+     */
+    @SuppressWarnings("unchecked")
+    private static BookRepository repository(Apply apply) {
+        return (BookRepository) Proxy.newProxyInstance(BookRepository.class.getClassLoader(),
+                new Class<?>[]{BookRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("applyLoanEvents")) {
+                        List<LoanEvent> events = (List<LoanEvent>) args[0];
+                        apply.check(events);
+                        boolean[] applied = new boolean[events.size()];
+                        Arrays.fill(applied, true);
+                        return applied;
+                    }
+                    return null;
+                });
+    }
+}
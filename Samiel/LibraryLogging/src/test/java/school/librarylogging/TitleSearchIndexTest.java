@@ -0,0 +1,64 @@
+package school.librarylogging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TitleSearchIndexTest {
+
+    private static final int CATALOG_SIZE = 50;
+    private static final int PAGE_SIZE = 10;
+
+    @Test
+    void supersededBuildNeverMarksPartialIndexReady() throws Exception {
+        TitleSearchIndex index = new TitleSearchIndex();
+        CompletableFuture<Boolean> newer = new CompletableFuture<>();
+
+        boolean olderCompleted = index.build(afterBookId -> {
+            if (afterBookId == PAGE_SIZE && !newer.isDone()) {
+                // A second build starts and finishes while the first is between pages
+                newer.complete(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return index.build(TitleSearchIndexTest::page);
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }).join());
+            }
+            return page(afterBookId);
+        });
+
+        assertTrue(newer.get());
+        assertFalse(olderCompleted);
+        assertTrue(index.isReady());
+        assertEquals(CATALOG_SIZE, index.getTitleCount());
+        assertEquals(CATALOG_SIZE, index.search("book", 0).size());
+    }
+
+    @Test
+    void renameDuringBuildKeepsNewTitle() throws Exception {
+        TitleSearchIndex index = new TitleSearchIndex();
+        index.build(afterBookId -> {
+            if (afterBookId == PAGE_SIZE) {
+                index.update(3, "Renamed");
+            }
+            return page(afterBookId);
+        });
+
+        assertEquals(List.of(3), index.search("renamed", 0));
+    }
+
+    private static List<Book> page(int afterBookId) {
+        List<Book> page = new ArrayList<>();
+        for (int bookId = afterBookId + 1; bookId <= Math.min(afterBookId + PAGE_SIZE, CATALOG_SIZE); bookId++) {
+            page.add(new Book(bookId, "Book " + bookId, 0));
+        }
+        return page;
+    }
+}
@@ -0,0 +1,184 @@
+package school.librarylogging;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens a seeded catalog for the database benchmarks and exposes the {@link DatabaseHandler} operations,
+ * which are package-private, to them.
+ *
+ * The stand-in is the embedded store in a scratch file ({@code -Dlibrarylogging.bench.storage=embedded},
+ * the default); {@code mysql} benchmarks the configured MySQL server instead. The catalog is topped up to the
+ * requested size with generated titles; the embedded scratch file is named after the size and reused by later runs.
+ */
+public final class BenchmarkDatabase {
+
+    public static final String[] WORDS = {
+            "history", "garden", "river", "science", "kingdom", "shadow", "ocean", "machine", "winter", "empire",
+            "island", "letters", "mountain", "secret", "journey", "silver", "forest", "theory", "stars", "city",
+            "memory", "fire", "language", "atlas", "children", "music", "algebra", "light", "house", "war"
+    };
+
+    private static final int SEED_CHUNK_SIZE = 5000;
+    private static final PrintStream CONSOLE = System.out;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Opens the benchmark database and seeds it with at least {@code catalogSize} books.
+     */
+    public static void open(int catalogSize) throws SQLException {
+        String storage = System.getProperty("librarylogging.bench.storage", "embedded");
+        if (storage.equalsIgnoreCase("embedded")) {
+            Path file = Path.of(System.getProperty("librarylogging.bench.file",
+                    System.getProperty("java.io.tmpdir") + "/librarylogging-bench-" + catalogSize + ".db"));
+            DatabaseHandler.repository = new EmbeddedBookRepository(file);
+        } else {
+            DatabaseHandler.repository = DatabaseHandler.openRepository(storage);
+        }
+        DatabaseHandler.bookCache.clear();
+
+        int existing = countBooks();
+        if (existing < catalogSize) {
+            long start = System.nanoTime();
+            List<Book> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+            for (int i = existing; i < catalogSize; i++) {
+                chunk.add(new Book(0, title(i), 0));
+                if (chunk.size() == SEED_CHUNK_SIZE || i == catalogSize - 1) {
+                    DatabaseHandler.repository.addBooks(chunk);
+                    chunk.clear();
+                }
+            }
+            CONSOLE.printf("Seeded %d books in %d ms%n", catalogSize - existing, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        try {
+            BookRepository source = DatabaseHandler.repository;
+            DatabaseHandler.searchIndex.build(afterBookId -> source.findBookPage(null, afterBookId, SEED_CHUNK_SIZE));
+        } catch (Exception ex) {
+            throw new SQLException("Search index build failed: " + ex.getMessage(), ex);
+        }
+        CONSOLE.println("Benchmark database: " + DatabaseHandler.repository.describe() + ", " + DatabaseHandler.searchIndex);
+    }
+
+    private static int countBooks() throws SQLException {
+        int count = 0;
+        int afterBookId = 0;
+        List<Book> page;
+        while (!(page = DatabaseHandler.repository.findBookPage(null, afterBookId, SEED_CHUNK_SIZE)).isEmpty()) {
+            count += page.size();
+            afterBookId = page.get(page.size() - 1).bookId();
+        }
+        return count;
+    }
+
+    /**
+     * @return the generated title of the n-th seeded book
+     */
+    public static String title(int n) {
+        return "The " + WORDS[n % WORDS.length] + " of " + WORDS[(n / WORDS.length) % WORDS.length]
+                + " volume " + n;
+    }
+
+    /**
+     * @return the highest book_id in the catalog
+     */
+    public static int getMaxBookId() throws SQLException {
+        int afterBookId = 0;
+        List<Book> page;
+        while (!(page = DatabaseHandler.repository.findBookPage(null, afterBookId, SEED_CHUNK_SIZE)).isEmpty()) {
+            afterBookId = page.get(page.size() - 1).bookId();
+        }
+        return afterBookId;
+    }
+
+    /**
+     * Silences the per-operation console output of {@link DatabaseHandler} while measuring.
+     */
+    public static void quiet() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    public static PrintStream console() {
+        return CONSOLE;
+    }
+
+    public static Object[][] findBookAsTableData(String bookName) throws SQLException {
+        return DatabaseHandler.findBookAsTableData(bookName);
+    }
+
+    public static void findBook(String bookName) {
+        DatabaseHandler.findBook(bookName);
+    }
+
+    public static Book findBookById(int bookId) throws SQLException {
+        return DatabaseHandler.findBookById(bookId);
+    }
+
+    public static List<Book> findBookPage(String bookName, int afterBookId, int limit) throws SQLException {
+        return DatabaseHandler.findBookPage(bookName, afterBookId, limit);
+    }
+
+    public static boolean updateBook(int bookId, String newBookName, int borrowed) throws SQLException {
+        return DatabaseHandler.updateBookInDatabase(bookId, newBookName, borrowed);
+    }
+
+    public static boolean borrowBook(int bookId, String borrower) throws SQLException {
+        return DatabaseHandler.borrowBook(bookId, borrower);
+    }
+
+    public static boolean returnBook(int bookId) throws SQLException {
+        return DatabaseHandler.returnBook(bookId);
+    }
+
+    /**
+     * @return time spent waiting for a pooled connection (MySQL) or for the store lock (embedded), in
+     *         microseconds, or null for other backends
+     */
+    public static Histogram getWaitTime() {
+        if (DatabaseHandler.repository instanceof MySqlBookRepository mysql) {
+            return mysql.getPool().getWaitTime();
+        }
+        if (DatabaseHandler.repository instanceof EmbeddedBookRepository embedded) {
+            return embedded.getLockWaitTime();
+        }
+        return null;
+    }
+
+    /**
+     * @return the connection pool, cache and group commit statistics, one per line
+     */
+    public static String describeStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        if (DatabaseHandler.repository instanceof MySqlBookRepository mysql) {
+            statistics.append(mysql.getPool()).append('\n');
+        }
+        statistics.append(DatabaseHandler.bookCache).append('\n');
+        if (DatabaseHandler.getLoanWriter() != null) {
+            statistics.append(DatabaseHandler.getLoanWriter()).append('\n');
+        }
+        return statistics.toString();
+    }
+
+    /**
+     * Restores the console and closes the database.
+     */
+    public static void close() {
+        System.setOut(CONSOLE);
+        LoanEventWriter writer = DatabaseHandler.getLoanWriter();
+        if (writer != null) {
+            writer.close();
+        }
+        try {
+            DatabaseHandler.repository.close();
+        } catch (Exception ex) {
+            System.out.println("Error! " + ex.getMessage());
+        }
+        DatabaseHandler.repository = null;
+    }
+}
@@ -0,0 +1,40 @@
+package school.librarylogging.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Takes the usual JMH command line and adds the GC profiler
+ * unless other profilers are given, so every run reports allocation per op.
+ *
+ * <pre>
+ *   java -jar target/benchmarks.jar                          # everything
+ *   java -jar target/benchmarks.jar DecodeBenchmark -p kind=BLURRY
+ *   java -Dlibrarylogging.bench.frames=frames -jar target/benchmarks.jar   # with recorded frames
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        System.setProperty("java.awt.headless", "true");
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        String frames = System.getProperty("librarylogging.bench.frames");
+        if (frames != null) {
+            // Benchmarks run in forked JVMs, which do not inherit system properties
+            options.jvmArgsAppend("-Djava.awt.headless=true", "-Dlibrarylogging.bench.frames=" + frames);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package school.librarylogging.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import school.librarylogging.BenchmarkDatabase;
+import school.librarylogging.Book;
+import school.librarylogging.Histogram;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link school.librarylogging.DatabaseHandler} operations against a seeded catalog, from several
+ * threads at once (20 desks by default; change with {@code -t}).
+ *
+ * Throughput gives ops/s and sample time the latency percentiles. The time spent waiting for a connection
+ * (MySQL) or for the store lock (embedded stand-in) is printed at the end of every trial, with the cache and
+ * group commit statistics. See {@link DatabaseLoadTest} for a fixed-duration run with a mix of operations.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Threads(20)
+public class DatabaseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"10000", "500000"})
+        public int catalogSize;
+
+        int maxBookId;
+
+        @Setup(Level.Trial)
+        public void open() throws SQLException {
+            BenchmarkDatabase.open(catalogSize);
+            maxBookId = BenchmarkDatabase.getMaxBookId();
+            BenchmarkDatabase.quiet();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            Histogram wait = BenchmarkDatabase.getWaitTime();
+            BenchmarkDatabase.console().println();
+            BenchmarkDatabase.console().print("wait{" + wait + "}\n" + BenchmarkDatabase.describeStatistics());
+            BenchmarkDatabase.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Desk {
+
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+
+        int bookId(Catalog catalog) {
+            return 1 + random.nextInt(catalog.maxBookId);
+        }
+
+        String word() {
+            return BenchmarkDatabase.WORDS[random.nextInt(BenchmarkDatabase.WORDS.length)];
+        }
+    }
+
+    /** The book search of the main window. */
+    @Benchmark
+    public Object[][] findBookAsTableData(Catalog catalog, Desk desk) throws SQLException {
+        return BenchmarkDatabase.findBookAsTableData(desk.word() + " of " + desk.word());
+    }
+
+    /** The console search, which formats a table (discarded). */
+    @Benchmark
+    public void findBook(Catalog catalog, Desk desk) {
+        BenchmarkDatabase.findBook(desk.word() + " of " + desk.word());
+    }
+
+    /** The scanner's lookup of a scanned label. */
+    @Benchmark
+    public Book findBookById(Catalog catalog, Desk desk) throws SQLException {
+        return BenchmarkDatabase.findBookById(desk.bookId(catalog));
+    }
+
+    /** One page of the lazily loaded table. */
+    @Benchmark
+    public List<Book> findBookPage(Catalog catalog, Desk desk) throws SQLException {
+        return BenchmarkDatabase.findBookPage(null, desk.bookId(catalog), 100);
+    }
+
+    /** The edit dialog. */
+    @Benchmark
+    public boolean updateBook(Catalog catalog, Desk desk) throws SQLException {
+        return BenchmarkDatabase.updateBook(desk.bookId(catalog), null, 0);
+    }
+
+    /** A checkout and its return, each through the group commit. */
+    @Benchmark
+    public boolean borrowAndReturn(Catalog catalog, Desk desk) throws SQLException {
+        int bookId = desk.bookId(catalog);
+        return BenchmarkDatabase.borrowBook(bookId, "bench") & BenchmarkDatabase.returnBook(bookId);
+    }
+}
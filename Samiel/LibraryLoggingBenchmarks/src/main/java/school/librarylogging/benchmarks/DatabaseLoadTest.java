@@ -0,0 +1,140 @@
+package school.librarylogging.benchmarks;
+
+import school.librarylogging.BenchmarkDatabase;
+import school.librarylogging.Histogram;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a mix of {@link school.librarylogging.DatabaseHandler} operations from N desks at once for a fixed
+ * time, like a library at opening hour, and reports throughput, latency percentiles per operation and the
+ * time spent waiting for a connection or the store lock. Meant as the baseline to compare data-access
+ * changes against.
+ *
+ * Configured with {@code -Dlibrarylogging.bench.threads} (20), {@code .seconds} (30), {@code .catalogSize}
+ * (500000) and {@code .storage} (embedded or mysql):
+ * <pre>
+ *   java -cp target/benchmarks.jar school.librarylogging.benchmarks.DatabaseLoadTest
+ * </pre>
+ */
+public final class DatabaseLoadTest {
+
+    /**
+     * Operations of the mix, with their share of all operations in percent.
+     */
+    private enum Operation {
+        SEARCH(40),
+        FIND_BY_ID(30),
+        PAGE(10),
+        UPDATE(10),
+        BORROW_RETURN(10);
+
+        final int share;
+        final Histogram latency = new Histogram("us");
+        final AtomicLong failures = new AtomicLong();
+
+        Operation(int share) {
+            this.share = share;
+        }
+    }
+
+    private DatabaseLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("librarylogging.bench.threads", 20);
+        int seconds = Integer.getInteger("librarylogging.bench.seconds", 30);
+        int catalogSize = Integer.getInteger("librarylogging.bench.catalogSize", 500_000);
+
+        BenchmarkDatabase.open(catalogSize);
+        int maxBookId = BenchmarkDatabase.getMaxBookId();
+        BenchmarkDatabase.quiet();
+        // Warm the caches and the JIT before measuring
+        run(threads, Math.max(1, seconds / 5), maxBookId);
+        for (Operation operation : Operation.values()) {
+            operation.latency.reset();
+            operation.failures.set(0);
+        }
+        Histogram wait = BenchmarkDatabase.getWaitTime();
+        if (wait != null) {
+            wait.reset();
+        }
+
+        long start = System.nanoTime();
+        run(threads, seconds, maxBookId);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        BenchmarkDatabase.close();
+
+        long total = 0;
+        System.out.printf("%d desks, %d books, %.1f s%n", threads, catalogSize, elapsed);
+        System.out.printf("%-14s %10s %10s %8s %8s %8s %8s %8s%n",
+                "operation", "ops", "ops/s", "p50 us", "p95 us", "p99 us", "max us", "failed");
+        for (Operation operation : Operation.values()) {
+            Histogram latency = operation.latency;
+            total += latency.getCount();
+            System.out.printf("%-14s %10d %10.0f %8d %8d %8d %8d %8d%n", operation, latency.getCount(),
+                    latency.getCount() / elapsed, latency.getPercentile(50), latency.getPercentile(95),
+                    latency.getPercentile(99), latency.getMax(), operation.failures.get());
+        }
+        System.out.printf("%-14s %10d %10.0f%n", "total", total, total / elapsed);
+        System.out.println("wait{" + wait + "}");
+        System.out.print(BenchmarkDatabase.describeStatistics());
+    }
+
+    private static void run(int threads, int seconds, int maxBookId) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> desks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom random = new SplittableRandom(i);
+            Thread desk = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    Operation operation = pick(random.nextInt(100));
+                    long started = System.nanoTime();
+                    try {
+                        perform(operation, random, maxBookId);
+                        operation.latency.record((System.nanoTime() - started) / 1000);
+                    } catch (SQLException ex) {
+                        operation.failures.incrementAndGet();
+                    }
+                }
+            }, "desk-" + i);
+            desks.add(desk);
+            desk.start();
+        }
+        for (Thread desk : desks) {
+            desk.join();
+        }
+    }
+
+    private static Operation pick(int roll) {
+        for (Operation operation : Operation.values()) {
+            roll -= operation.share;
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        return Operation.SEARCH;
+    }
+
+    private static void perform(Operation operation, SplittableRandom random, int maxBookId) throws SQLException {
+        int bookId = 1 + random.nextInt(maxBookId);
+        switch (operation) {
+            case SEARCH -> {
+                String[] words = BenchmarkDatabase.WORDS;
+                BenchmarkDatabase.findBookAsTableData(words[random.nextInt(words.length)] + " of "
+                        + words[random.nextInt(words.length)]);
+            }
+            case FIND_BY_ID -> BenchmarkDatabase.findBookById(bookId);
+            case PAGE -> BenchmarkDatabase.findBookPage(null, bookId, 100);
+            case UPDATE -> BenchmarkDatabase.updateBook(bookId, null, 0);
+            case BORROW_RETURN -> {
+                BenchmarkDatabase.borrowBook(bookId, "desk");
+                BenchmarkDatabase.returnBook(bookId);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package school.librarylogging.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import school.librarylogging.MultiQrDecoder;
+import school.librarylogging.QrDecoder;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes one camera frame per operation, for every kind of frame in the {@link FrameCorpus}.
+ *
+ * Throughput gives ops/s, sample time gives the latency percentiles (p99 among them), and the GC
+ * profiler that {@link BenchmarkMain} adds gives the allocation per op ({@code gc.alloc.rate.norm}).
+ * Frames are cycled so consecutive operations see different sensor noise, as a live camera does; a
+ * {@link QrDecoder} therefore keeps tracking a label from frame to frame, as it would at a station.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DecodeBenchmark {
+
+    @State(Scope.Thread)
+    public static class Frames {
+
+        @Param({"SHARP", "BLURRY", "ROTATED", "LOW_LIGHT", "MULTIPLE", "NONE"})
+        public FrameCorpus.Kind kind;
+
+        private BufferedImage[] frames;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            List<BufferedImage> corpus = FrameCorpus.frames(kind);
+            frames = corpus.toArray(new BufferedImage[0]);
+        }
+
+        BufferedImage next() {
+            BufferedImage frame = frames[next];
+            next = (next + 1) % frames.length;
+            return frame;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Decoder {
+
+        @Param({"FAST", "TRY_HARDER", "PURE_BARCODE"})
+        public QrDecoder.Mode mode;
+
+        // Ignored for PURE_BARCODE, which always decodes the whole frame
+        @Param({"true", "false"})
+        public boolean multiPass;
+
+        QrDecoder decoder;
+
+        @Setup(Level.Trial)
+        public void create() {
+            decoder = new QrDecoder(mode, EnumSet.of(BarcodeFormat.QR_CODE), multiPass,
+                    QrDecoder.DEFAULT_ROI_FRACTION, QrDecoder.DEFAULT_ROI_SCALE);
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+            System.out.println();
+            System.out.println(decoder);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BatchDecoder {
+
+        MultiQrDecoder decoder;
+
+        @Setup(Level.Trial)
+        public void create() {
+            decoder = new MultiQrDecoder();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            decoder.close();
+            System.out.println();
+            System.out.println(decoder);
+        }
+    }
+
+    /**
+     * The scan loop as {@code QRScannerForm.run} had it before the decoder work: a new all-formats
+     * reader and an RGB luminance copy for every frame. The baseline the other strategies are measured against.
+     */
+    @Benchmark
+    public Result scannerRunLoop(Frames frames) {
+        LuminanceSource source = new BufferedImageLuminanceSource(frames.next());
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        try {
+            MultiFormatReader reader = new MultiFormatReader();
+            return reader.decode(bitmap);
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The current scan path: {@link QrDecoder} as the adaptive frame scanner runs it, per mode and pass setting.
+     */
+    @Benchmark
+    public Result qrDecoder(Frames frames, Decoder decoder) {
+        try {
+            return decoder.decoder.decode(frames.next());
+        } catch (ReaderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Batch mode: every code in the frame, full frame and tiles decoded in parallel.
+     */
+    @Benchmark
+    public List<Result> multiQrDecoder(Frames frames, BatchDecoder decoder) throws InterruptedException {
+        return decoder.decoder.decodeMultiple(frames.next());
+    }
+}
@@ -0,0 +1,235 @@
+package school.librarylogging.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import school.librarylogging.BookLabelCodec;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Kernel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Camera frames to decode in the benchmarks, one list per kind of frame.
+ *
+ * Frames recorded at a scanning station are used when {@code -Dlibrarylogging.bench.frames} names a
+ * directory of PNGs whose names start with the kind, e.g. {@code blurry-03.png}. Kinds without recorded
+ * frames are synthesized: 640x480 BGR frames like the webcam delivers, holding labels with the payload
+ * {@link school.librarylogging.BookQrDialog} prints, made deterministic by a fixed seed.
+ *
+ * Run {@link #main} to write the synthetic corpus to a directory, to look at it or to replace frames of it
+ * with recorded ones.
+ */
+public final class FrameCorpus {
+
+    /**
+     * Kinds of frames a scanning station sees.
+     */
+    public enum Kind {
+        /** One label, in focus, square to the camera. */
+        SHARP,
+        /** One label, out of focus. */
+        BLURRY,
+        /** One label, turned and off center. */
+        ROTATED,
+        /** One label in a dim, noisy frame. */
+        LOW_LIGHT,
+        /** A stack of six labels. */
+        MULTIPLE,
+        /** The desk without a label. */
+        NONE
+    }
+
+    public static final int WIDTH = 640;
+    public static final int HEIGHT = 480;
+    // Synthetic frames per kind; consecutive frames differ in sensor noise, like a live camera
+    private static final int FRAMES_PER_KIND = 4;
+
+    private FrameCorpus() {
+    }
+
+    /**
+     * @return the frames of one kind, recorded if available, as {@link BufferedImage#TYPE_3BYTE_BGR} images
+     */
+    public static List<BufferedImage> frames(Kind kind) throws IOException {
+        String directory = System.getProperty("librarylogging.bench.frames");
+        if (directory != null) {
+            List<BufferedImage> recorded = load(new File(directory), kind);
+            if (!recorded.isEmpty()) {
+                return recorded;
+            }
+        }
+        List<BufferedImage> frames = new ArrayList<>(FRAMES_PER_KIND);
+        for (int i = 0; i < FRAMES_PER_KIND; i++) {
+            frames.add(synthesize(kind, new Random(kind.ordinal() * 1000L + i)));
+        }
+        return frames;
+    }
+
+    private static List<BufferedImage> load(File directory, Kind kind) throws IOException {
+        String prefix = kind.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        File[] files = directory.listFiles((dir, name) -> {
+            String lower = name.toLowerCase(Locale.ROOT).replace('_', '-');
+            return lower.startsWith(prefix) && lower.endsWith(".png");
+        });
+        List<BufferedImage> frames = new ArrayList<>();
+        if (files == null) {
+            return frames;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image != null) {
+                frames.add(toCameraFormat(image));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return the image as a 3-byte BGR image, the format webcam frames arrive in
+     */
+    static BufferedImage toCameraFormat(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+        BufferedImage frame = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = frame.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return frame;
+    }
+
+    private static BufferedImage synthesize(Kind kind, Random random) {
+        BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = frame.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        drawDesk(g, random);
+
+        switch (kind) {
+            case SHARP, BLURRY, LOW_LIGHT -> drawLabel(g, label(17), 200, 220, 140, 0);
+            case ROTATED -> drawLabel(g, label(42), 190, 380, 200, Math.toRadians(25));
+            case MULTIPLE -> {
+                for (int i = 0; i < 6; i++) {
+                    drawLabel(g, label(100 + i), 150, 110 + (i % 3) * 210, 120 + (i / 3) * 230, 0);
+                }
+            }
+            case NONE -> {
+                // Printed text and edges, nothing that decodes
+                g.setColor(new Color(40, 40, 40));
+                g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 28));
+                g.drawString("Library Logging", 180, 240);
+                g.fillRect(120, 300, 400, 6);
+            }
+        }
+        g.dispose();
+
+        if (kind == Kind.BLURRY) {
+            frame = blur(frame, 7);
+        }
+        addNoise(frame, random, kind == Kind.LOW_LIGHT ? 18 : 6);
+        if (kind == Kind.LOW_LIGHT) {
+            darken(frame, 0.3, 15);
+        }
+        return frame;
+    }
+
+    private static String label(int bookId) {
+        return BookLabelCodec.encode(bookId);
+    }
+
+    private static void drawDesk(Graphics2D g, Random random) {
+        g.setColor(new Color(150, 130, 105));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        // Wood grain, so the binarizer has texture to work through
+        for (int i = 0; i < 60; i++) {
+            g.setColor(new Color(120 + random.nextInt(40), 100 + random.nextInt(40), 80 + random.nextInt(30)));
+            int y = random.nextInt(HEIGHT);
+            g.drawLine(0, y, WIDTH, y + random.nextInt(20) - 10);
+        }
+    }
+
+    private static void drawLabel(Graphics2D g, String payload, int size, int centerX, int centerY, double angle) {
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, size, size,
+                    Map.of(EncodeHintType.MARGIN, 2, EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.Q));
+        } catch (WriterException ex) {
+            throw new IllegalStateException(ex);
+        }
+        AffineTransform saved = g.getTransform();
+        g.rotate(angle, centerX, centerY);
+        int left = centerX - size / 2;
+        int top = centerY - size / 2;
+        g.setColor(new Color(235, 235, 228));
+        g.fillRect(left - 6, top - 6, size + 12, size + 12);
+        g.setColor(new Color(25, 25, 25));
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y)) {
+                    g.fillRect(left + x, top + y, 1, 1);
+                }
+            }
+        }
+        g.setTransform(saved);
+    }
+
+    private static BufferedImage blur(BufferedImage frame, int kernelSize) {
+        float[] weights = new float[kernelSize * kernelSize];
+        Arrays.fill(weights, 1f / weights.length);
+        BufferedImage blurred = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        new ConvolveOp(new Kernel(kernelSize, kernelSize, weights), ConvolveOp.EDGE_NO_OP, null).filter(frame, blurred);
+        return blurred;
+    }
+
+    private static void addNoise(BufferedImage frame, Random random, int amplitude) {
+        byte[] pixels = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            int value = (pixels[i] & 0xFF) + random.nextInt(amplitude * 2 + 1) - amplitude;
+            pixels[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private static void darken(BufferedImage frame, double contrast, int floor) {
+        byte[] pixels = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (floor + (pixels[i] & 0xFF) * contrast);
+        }
+    }
+
+    /**
+     * Writes the corpus as PNGs, named by kind, to the directory given as the first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "frames");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        for (Kind kind : Kind.values()) {
+            List<BufferedImage> frames = frames(kind);
+            for (int i = 0; i < frames.size(); i++) {
+                String name = String.format("%s-%02d.png", kind.name().toLowerCase(Locale.ROOT).replace('_', '-'), i);
+                ImageIO.write(frames.get(i), "png", new File(directory, name));
+            }
+            System.out.println(kind + ": " + frames.size() + " frames");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package school.librarylogging.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import school.librarylogging.BookLabelCodec;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the text of one scanned label per operation, in every label format.
+ *
+ * {@code reusedParser} is what the scanner does for every code it sees and should show a
+ * {@code gc.alloc.rate.norm} of 0 B/op; {@code decode} adds the one immutable label kept per detection, and
+ * {@code regexSplit} is the regex split and match the scan flow used to run three times per detection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LabelParserBenchmark {
+
+    public enum Payload {
+        COMPACT(BookLabelCodec.encode(482_113)),
+        KEY_VALUE("book_id=482113;book_name=The Name of the Rose;borrowed=0"),
+        PIPE("482113|The Name of the Rose|Shelf 4"),
+        NUMERIC("482113");
+
+        final String text;
+
+        Payload(String text) {
+            this.text = text;
+        }
+    }
+
+    @Param({"COMPACT", "KEY_VALUE", "PIPE", "NUMERIC"})
+    public Payload payload;
+
+    private final BookLabelCodec.Parser parser = new BookLabelCodec.Parser();
+
+    @Benchmark
+    public int reusedParser() {
+        return parser.parse(payload.text) ? parser.bookId() : 0;
+    }
+
+    @Benchmark
+    public BookLabelCodec.Label decode() {
+        return BookLabelCodec.decode(payload.text);
+    }
+
+    @Benchmark
+    public void regexSplit(Blackhole blackhole) {
+        String content = payload.text;
+        // Display, validation and borrow each split the content again
+        for (int pass = 0; pass < 3; pass++) {
+            String[] parts = content.split("\\|");
+            blackhole.consume(parts);
+        }
+        blackhole.consume(content.matches("\\d+"));
+    }
+}
@@ -0,0 +1,108 @@
+package school.librarylogging.benchmarks;
+
+import school.librarylogging.BenchmarkDatabase;
+import school.librarylogging.Book;
+import school.librarylogging.FrameSource;
+import school.librarylogging.Metrics;
+import school.librarylogging.MultiQrDecoder;
+import school.librarylogging.QrDecoder;
+import school.librarylogging.ScanEngine;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Replays recorded scanner traffic through a headless {@link ScanEngine} as fast as it decodes, and reports
+ * the throughput of the whole scan flow: decode, label parsing, debouncing, lookup and borrowing.
+ *
+ * The recording is a directory of frames (e.g. written by {@link FrameCorpus}) or a Motion JPEG file. Every
+ * detected book is borrowed at once, as if a borrower confirmed every scan. By default the books come from
+ * an in-memory catalog, so only the scan flow is measured; with {@code -Dlibrarylogging.bench.catalogSize}
+ * they come from the seeded benchmark database ({@code .storage} embedded or mysql), and
+ * {@code -Dlibrarylogging.bench.batch=true} reads every code of a frame:
+ * <pre>
+ *   java -cp target/benchmarks.jar school.librarylogging.benchmarks.ScanReplay day.mjpeg
+ * </pre>
+ */
+public final class ScanReplay {
+
+    private ScanReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("Usage: ScanReplay <directory of frames | file.mjpeg>");
+            return;
+        }
+        System.setProperty("java.awt.headless", "true");
+        Integer catalogSize = Integer.getInteger("librarylogging.bench.catalogSize");
+        ScanEngine.Catalog catalog;
+        if (catalogSize != null) {
+            BenchmarkDatabase.open(catalogSize);
+            BenchmarkDatabase.quiet();
+            catalog = ScanEngine.Catalog.database();
+        } else {
+            catalog = new MemoryCatalog();
+        }
+
+        FrameSource source = FrameSource.open(Path.of(args[0]));
+        MultiQrDecoder batchDecoder = Boolean.getBoolean("librarylogging.bench.batch") ? new MultiQrDecoder() : null;
+        ScanEngine engine = new ScanEngine(source, QrDecoder.fromSystemProperties(), catalog, new ScanEngine.Listener() {
+            @Override
+            public void onEnd(Exception error) {
+                if (error != null) {
+                    BenchmarkDatabase.console().println("Replay stopped: " + error.getMessage());
+                }
+            }
+        });
+        engine.setAutoBorrower("replay");
+        engine.setBatchDecoder(batchDecoder);
+        engine.start();
+        engine.awaitEnd();
+        engine.close();
+        if (batchDecoder != null) {
+            batchDecoder.close();
+        }
+        if (catalogSize != null) {
+            BenchmarkDatabase.close();
+        }
+
+        System.out.printf("%s: %d frames at %.1f frames/s, %d codes, %d repeats, %d labels, %d borrowed, %d unavailable%n",
+                source.getName(), engine.getFramesRead(), engine.getFramesPerSecond(), engine.getCodesRead(),
+                engine.getRepeatCount(), engine.getLabelCount(), engine.getBorrowCount(), engine.getUnavailableCount());
+        System.out.println("frame{" + engine.getFrameTime() + "}");
+        System.out.println("lookup{" + engine.getLookupTime() + "}");
+        System.out.print(Metrics.snapshot());
+    }
+
+    /**
+     * Every book_id is in the catalog; a book is available until it is borrowed.
+     */
+    private static final class MemoryCatalog implements ScanEngine.Catalog {
+        private final BitSet borrowed = new BitSet();
+
+        @Override
+        public synchronized Book findBook(int bookId) {
+            return new Book(bookId, "Book " + bookId, borrowed.get(bookId) ? 1 : 0);
+        }
+
+        @Override
+        public synchronized boolean borrow(int bookId, String borrower) {
+            if (borrowed.get(bookId)) {
+                return false;
+            }
+            borrowed.set(bookId);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean[] borrowAll(List<Integer> bookIds, String borrower) {
+            boolean[] result = new boolean[bookIds.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = borrow(bookIds.get(i), borrower);
+            }
+            return result;
+        }
+    }
+}